@@ -0,0 +1,26 @@
+import java.io.IOException;
+
+/**
+ * An interface for consumers of the per-access events of a simulation.
+ * Simulator reports every access to its sink, which decides what to record and where,
+ * so detailed logging can be batched to a file or switched off entirely.
+ */
+public interface AccessSink {
+
+	/**
+	 * This is the method that records one access after the cache has processed it.
+	 * @param index position of the access in the trace, starting at 0
+	 * @param id the address ID of the access in cache.addresses()
+	 * @param hit whether the access was a cache hit
+	 * @param cache the cache after the access
+	 * @throws IOException If an output exception occurred while recording
+	 */
+	void access(long index, int id, boolean hit, IdCache cache) throws IOException;
+
+	/**
+	 * This is the method that writes out anything still buffered by the sink.
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	void flush() throws IOException;
+
+}
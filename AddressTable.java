@@ -0,0 +1,250 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A table interning addresses into dense integer IDs.
+ * The first distinct address gets ID 0, the next one ID 1 and so on, so cache engines
+ * can hash and compare primitive IDs and index per-address state with plain arrays,
+ * while output can still map every ID back to its address.
+ * An address can also be released, and its ID is then handed out again to the next new
+ * address, so a table whose users release what they no longer hold stays as large as
+ * the most addresses held at once, however many distinct addresses go through it.
+ */
+public class AddressTable {
+
+	/**
+	 * Number of lookup slots used for a new table.
+	 */
+	final static private int DEFAULT_CAPACITY = 64;
+
+	/**
+	 * Address of every ID, indexed by ID.
+	 */
+	private String[] names;
+
+	/**
+	 * Lookup slots holding addresses, null for an empty slot (linear probing).
+	 */
+	private String[] keys;
+
+	/**
+	 * ID of the address stored at the same position in keys.
+	 */
+	private int[] ids;
+
+	/**
+	 * Number of IDs handed out so far, released or not.
+	 */
+	private int size;
+
+	/**
+	 * Released IDs waiting to be handed out again, most recently released last, or null if none was ever released.
+	 */
+	private int[] released;
+
+	/**
+	 * Number of IDs in released.
+	 */
+	private int releasedCount;
+
+	/**
+	 * Constructs an empty table.
+	 */
+	public AddressTable() {
+		names = new String[DEFAULT_CAPACITY];
+		keys = new String[DEFAULT_CAPACITY * 2];
+		ids = new int[DEFAULT_CAPACITY * 2];
+	}
+
+	/**
+	 * Returns the number of distinct addresses in the table, or the range of its IDs if some were released.
+	 * @return the number of IDs handed out so far, every ID being less than it
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the ID of an address, assigning a free ID if the address is new.
+	 * @param addr the address to intern
+	 * @return the ID of the address
+	 * @throws IllegalArgumentException if addr is null
+	 */
+	public int intern(String addr) {
+		if (addr == null) {
+			throw new IllegalArgumentException("Address cannot be null");
+		}
+		int mask = keys.length - 1;
+		int i = slot(addr.hashCode(), mask);
+		while (keys[i] != null) {
+			if (keys[i].equals(addr)) {
+				return ids[i];
+			}
+			i = (i + 1) & mask;
+		}
+		return add(i, addr);
+	}
+
+	/**
+	 * Returns the ID of an address given as raw bytes, assigning a free ID if the address is new.
+	 * ASCII addresses are hashed and compared straight from the bytes, so no String is
+	 * created unless the address is new; other bytes are decoded as UTF-8 first.
+	 * @param bytes buffer holding the address
+	 * @param len number of bytes of the address, starting at index 0
+	 * @return the ID of the address
+	 */
+	public int intern(byte[] bytes, int len) {
+		int hash = 0;
+		for (int k = 0; k < len; k++) {
+			if (bytes[k] < 0) {
+				return intern(new String(bytes, 0, len, StandardCharsets.UTF_8));
+			}
+			hash = 31 * hash + bytes[k];
+		}
+		int mask = keys.length - 1;
+		int i = slot(hash, mask);
+		while (keys[i] != null) {
+			if (matches(keys[i], bytes, len)) {
+				return ids[i];
+			}
+			i = (i + 1) & mask;
+		}
+		return add(i, new String(bytes, 0, len, StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * Checks whether an address equals the given ASCII bytes.
+	 * @param addr the address to compare
+	 * @param bytes buffer holding ASCII characters
+	 * @param len number of bytes to compare, starting at index 0
+	 * @return true if addr consists of exactly these characters
+	 */
+	private static boolean matches(String addr, byte[] bytes, int len) {
+		if (addr.length() != len) {
+			return false;
+		}
+		for (int k = 0; k < len; k++) {
+			if (addr.charAt(k) != bytes[k]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stores a new address in an empty lookup slot and gives it the last released ID, or the next new one.
+	 * @param i the empty slot found for the address
+	 * @param addr the new address
+	 * @return the ID of the address
+	 */
+	private int add(int i, String addr) {
+		int id;
+		if (releasedCount > 0) {
+			id = released[--releasedCount];
+		} else if (size == names.length) {
+			grow();
+			return intern(addr);
+		} else {
+			id = size++;
+		}
+		keys[i] = addr;
+		ids[i] = id;
+		names[id] = addr;
+		return id;
+	}
+
+	/**
+	 * Returns the ID of an address without adding it.
+	 * @param addr the address to look up
+	 * @return the ID of the address, or -1 if it is null or not in the table
+	 */
+	public int find(String addr) {
+		if (addr == null) {
+			return -1;
+		}
+		int mask = keys.length - 1;
+		for (int i = slot(addr.hashCode(), mask); keys[i] != null; i = (i + 1) & mask) {
+			if (keys[i].equals(addr)) {
+				return ids[i];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the address an ID stands for.
+	 * @param id the ID to look up
+	 * @return the address of the ID, or null if it was released
+	 * @throws IllegalArgumentException if the ID has not been handed out
+	 */
+	public String name(int id) {
+		if (id < 0 || id >= size) {
+			throw new IllegalArgumentException("Unknown address ID: " + id);
+		}
+		return names[id];
+	}
+
+	/**
+	 * Forgets an address, so that its ID is handed out again to a new address.
+	 * The caller must no longer use the ID, nor pass it to a cache sharing this table.
+	 * @param id the ID of the address to forget
+	 * @throws IllegalArgumentException if id is not the ID of an address in the table
+	 */
+	public void release(int id) {
+		String addr = id >= 0 && id < size ? names[id] : null;
+		if (addr == null) {
+			throw new IllegalArgumentException("Unknown address ID: " + id);
+		}
+		int mask = keys.length - 1;
+		int hole = slot(addr.hashCode(), mask);
+		while (ids[hole] != id || keys[hole] == null) {
+			hole = (hole + 1) & mask;
+		}
+		//shift back every following address of the run that may not probe past the hole
+		for (int i = (hole + 1) & mask; keys[i] != null; i = (i + 1) & mask) {
+			int home = slot(keys[i].hashCode(), mask);
+			if (((i - home) & mask) >= ((i - hole) & mask)) {
+				keys[hole] = keys[i];
+				ids[hole] = ids[i];
+				hole = i;
+			}
+		}
+		keys[hole] = null;
+		names[id] = null;
+		if (released == null || releasedCount == released.length) {
+			released = Arrays.copyOf(released == null ? new int[0] : released, Math.max(16, 2 * releasedCount));
+		}
+		released[releasedCount++] = id;
+	}
+
+	/**
+	 * Returns the first lookup slot of an address.
+	 * @param hash the String hash code of the address
+	 * @param mask the number of lookup slots minus one
+	 * @return the slot to start probing at
+	 */
+	private static int slot(int hash, int mask) {
+		int h = hash * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * Doubles the name array and the lookup slots, keeping the lookup at most half full.
+	 */
+	private void grow() {
+		String[] newNames = new String[names.length * 2];
+		System.arraycopy(names, 0, newNames, 0, size);
+		names = newNames;
+		keys = new String[names.length * 2];
+		ids = new int[names.length * 2];
+		int mask = keys.length - 1;
+		for (int id = 0; id < size; id++) {
+			int i = slot(names[id].hashCode(), mask);
+			while (keys[i] != null) {
+				i = (i + 1) & mask;
+			}
+			keys[i] = names[id];
+			ids[i] = id;
+		}
+	}
+}
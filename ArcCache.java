@@ -0,0 +1,455 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Cache implementing ARC (Adaptive Replacement Cache) replacement policy.
+ * Resident items live in T1 (seen once recently) or T2 (seen at least twice), and the
+ * addresses recently evicted from them are remembered, without data, in the ghost lists
+ * B1 and B2. A hit in a ghost list moves the target size p of T1 towards the list that
+ * would have hit, so the cache adapts between recency and frequency on its own, and a
+ * sequential scan only ever flushes T1.
+ * All four lists are LRU-to-MRU lists over int arrays of slots, with an index from
+ * address ID to slot, so every access takes constant time.
+ * A registered {@code CacheListener} is told of every access.
+ */
+public class ArcCache implements IdCache {
+
+	/**
+	 * List number of T1, resident items seen once.
+	 */
+	final static private int T1 = 0;
+
+	/**
+	 * List number of T2, resident items seen at least twice.
+	 */
+	final static private int T2 = 1;
+
+	/**
+	 * List number of B1, ghosts evicted from T1.
+	 */
+	final static private int B1 = 2;
+
+	/**
+	 * List number of B2, ghosts evicted from T2.
+	 */
+	final static private int B2 = 3;
+
+	/**
+	 * Names of the lists, indexed by list number.
+	 */
+	final static private String[] LIST_NAMES = {"T1", "T2", "B1", "B2"};
+
+	/**
+	 * The max number of resident items in the cache.
+	 */
+	private int capacity;
+
+	/**
+	 * Target size of T1.
+	 */
+	private int p;
+
+	/**
+	 * Table mapping address IDs to addresses.
+	 */
+	private AddressTable addresses;
+
+	/**
+	 * Whether addresses is this cache's own table, in which forgotten addresses are released.
+	 */
+	private boolean ownsTable;
+
+	/**
+	 * Maps each resident or ghost address ID to its slot.
+	 */
+	private SlotIndex index;
+
+	/**
+	 * Address ID stored in each slot.
+	 */
+	private int[] keys;
+
+	/**
+	 * List number each slot belongs to.
+	 */
+	private byte[] listOf;
+
+	/**
+	 * Slot closer to the LRU end of the same list, -1 for a list head.
+	 */
+	private int[] prev;
+
+	/**
+	 * Slot closer to the MRU end of the same list, -1 for a list tail.
+	 * Unused slots are chained through this array as a free list.
+	 */
+	private int[] next;
+
+	/**
+	 * LRU slot of each list, -1 if the list is empty.
+	 */
+	private int[] heads = {-1, -1, -1, -1};
+
+	/**
+	 * MRU slot of each list, -1 if the list is empty.
+	 */
+	private int[] tails = {-1, -1, -1, -1};
+
+	/**
+	 * Length of each list.
+	 */
+	private int[] lengths = new int[4];
+
+	/**
+	 * First unused slot, or -1 if all are in use.
+	 */
+	private int freeSlot;
+
+	/**
+	 * Listener told of every access, or null.
+	 */
+	private CacheListener listener;
+
+	/**
+	 * Constructs an ARC cache with the specified capacity and its own address table.
+	 * The cache releases the ID of every address it forgets, evicted and no longer remembered
+	 * in a ghost list, so the table stays within twice the size of the cache however many
+	 * distinct addresses go through access(String).
+	 * @param cap the capacity of the cache
+	 * @throws IllegalArgumentException if cap is not positive
+	 */
+	public ArcCache(int cap){
+		this(cap, new AddressTable());
+		this.ownsTable = true;
+	}
+
+	/**
+	 * Constructs an ARC cache with the specified capacity over a shared address table.
+	 * Resident items and ghosts together never exceed twice the capacity.
+	 * @param cap the capacity of the cache
+	 * @param addresses the table the IDs passed to access(int) come from
+	 * @throws IllegalArgumentException if cap is not positive or addresses is null
+	 */
+	public ArcCache(int cap, AddressTable addresses){
+		if (cap <= 0) {
+			throw new IllegalArgumentException("Capacity cannot be negative.");
+		}
+		if (addresses == null) {
+			throw new IllegalArgumentException("Address table cannot be null.");
+		}
+		this.capacity = cap;
+		this.addresses = addresses;
+		this.index = new SlotIndex(addresses.size());
+		this.keys = new int[2 * cap];
+		this.listOf = new byte[2 * cap];
+		this.prev = new int[2 * cap];
+		this.next = new int[2 * cap];
+		for (int slot = 0; slot < 2 * cap; slot++) {
+			next[slot] = slot + 1 < 2 * cap ? slot + 1 : -1;
+		}
+	}
+
+	/**
+	 * Checks if the cache is full.
+	 * @return true if the cache is full, false otherwise
+	 */
+	public boolean isFull(){
+		return size() == capacity;
+	}
+
+	/**
+	 * Reports the maximum number of items allowed in the cache.
+	 * @return the capacity of the cache
+	 */
+	public int capacity(){
+		return capacity;
+	}
+
+	/**
+	 * Reports the number of items stored in the cache, not counting ghosts.
+	 * @return the number of items stored in the cache
+	 */
+	public int size(){
+		return lengths[T1] + lengths[T2];
+	}
+
+	/**
+	 * Reports the current target size of T1.
+	 * @return the adaptive target p
+	 */
+	public int target(){
+		return p;
+	}
+
+	/**
+	 * Reports the table used to map IDs back to addresses.
+	 * @return the address table of this cache
+	 */
+	public AddressTable addresses(){
+		return addresses;
+	}
+
+	/**
+	 * Returns the item that will be evicted if the next access is a miss on an address
+	 * that is not a ghost either.
+	 * @return the item to be evicted, or null if no item will be evicted
+	 */
+	public String nextToReplace(){
+		if (!isFull()) {
+			return null;
+		}
+		if (lengths[T1] + lengths[B1] == capacity && lengths[T1] == capacity) {
+			return addresses.name(keys[heads[T1]]);
+		}
+		return addresses.name(keys[heads[victimList(false)]]);
+	}
+
+	/**
+	 * Reports whether an address is in T1 or T2, without counting as an access; a ghost is not.
+	 * @param id the ID of the address
+	 * @return true if the address is in the cache, false otherwise
+	 */
+	public boolean contains(int id){
+		int slot = id >= 0 ? index.get(id) : -1;
+		return slot >= 0 && listOf[slot] <= T2;
+	}
+
+	/**
+	 * Registers a listener to be told of every access from now on, replacing any previous one.
+	 * @param listener the listener, or null to remove it
+	 */
+	public void setListener(CacheListener listener){
+		this.listener = listener;
+	}
+
+	/**
+	 * Determines whether the access to addr is a hit or miss.
+	 * Performs necessary updating to maintain the ARC cache.
+	 * @param addr the address to be accessed
+	 * @return true if the access is a hit, false if it's a miss
+	 * @throws IllegalArgumentException if addr is null
+	 */
+	public boolean access(String addr){
+		return access(addresses.intern(addr));
+	}
+
+	/**
+	 * Determines whether the access to an address ID is a hit or miss.
+	 * Performs necessary updating to maintain the ARC cache.
+	 * @param id the ID of the address to be accessed
+	 * @return true if the access is a hit, false if it's a miss
+	 * @throws IllegalArgumentException if id is not an ID of addresses()
+	 */
+	public boolean access(int id){
+		if (id < 0 || id >= addresses.size()) {
+			throw new IllegalArgumentException("Unknown address ID: " + id);
+		}
+		int slot = index.get(id);
+		if (slot >= 0 && listOf[slot] <= T2) {
+			moveTo(slot, T2);
+			if (listener != null) {
+				listener.hit(id);
+			}
+			return true;
+		}
+		if (listener != null) {
+			listener.miss(id);
+		}
+		if (slot >= 0) {
+			//ghost hit: adapt p towards the list that would have hit, then make room
+			boolean inB2 = listOf[slot] == B2;
+			if (inB2) {
+				p = Math.max(0, p - Math.max(lengths[B1] / lengths[B2], 1));
+			} else {
+				p = Math.min(capacity, p + Math.max(lengths[B2] / lengths[B1], 1));
+			}
+			replace(inB2);
+			moveTo(slot, T2);
+			if (listener != null) {
+				listener.insert(id);
+			}
+			return false;
+		}
+		int l1 = lengths[T1] + lengths[B1];
+		int total = l1 + lengths[T2] + lengths[B2];
+		if (l1 == capacity) {
+			if (lengths[T1] < capacity) {
+				free(heads[B1]);
+				replace(false);
+			} else {
+				if (listener != null) {
+					listener.evict(keys[heads[T1]]);
+				}
+				free(heads[T1]);
+			}
+		} else if (total >= capacity) {
+			if (total == 2 * capacity) {
+				free(heads[B2]);
+			}
+			replace(false);
+		}
+		slot = freeSlot;
+		freeSlot = next[slot];
+		keys[slot] = id;
+		index.put(id, slot);
+		linkLast(slot, T1);
+		if (listener != null) {
+			listener.insert(id);
+		}
+		return false;
+	}
+
+	/**
+	 * Evicts the LRU item of T1 or T2 into the matching ghost list, as chosen by the target p.
+	 * @param inB2 whether the accessed address is a ghost in B2
+	 */
+	private void replace(boolean inB2) {
+		int list = victimList(inB2);
+		int slot = heads[list];
+		moveTo(slot, list == T1 ? B1 : B2);
+		if (listener != null) {
+			listener.evict(keys[slot]);
+		}
+	}
+
+	/**
+	 * Chooses the resident list to evict from.
+	 * @param inB2 whether the accessed address is a ghost in B2
+	 * @return T1 if T1 is over its target, T2 otherwise
+	 */
+	private int victimList(boolean inB2) {
+		int t1 = lengths[T1];
+		if (t1 > 0 && ((inB2 && t1 == p) || t1 > p || lengths[T2] == 0)) {
+			return T1;
+		}
+		return T2;
+	}
+
+	/**
+	 * Moves a slot to the MRU end of a list.
+	 * @param slot the slot to move
+	 * @param list the destination list
+	 */
+	private void moveTo(int slot, int list) {
+		unlink(slot);
+		linkLast(slot, list);
+	}
+
+	/**
+	 * Forgets the address of a slot and returns the slot to the free list.
+	 * @param slot the slot to release
+	 */
+	private void free(int slot) {
+		unlink(slot);
+		index.remove(keys[slot]);
+		if (ownsTable) {
+			addresses.release(keys[slot]);
+		}
+		next[slot] = freeSlot;
+		freeSlot = slot;
+	}
+
+	/**
+	 * Detaches a slot from its list.
+	 * @param slot the slot to detach
+	 */
+	private void unlink(int slot) {
+		int list = listOf[slot];
+		if (prev[slot] < 0) {
+			heads[list] = next[slot];
+		} else {
+			next[prev[slot]] = next[slot];
+		}
+		if (next[slot] < 0) {
+			tails[list] = prev[slot];
+		} else {
+			prev[next[slot]] = prev[slot];
+		}
+		lengths[list]--;
+	}
+
+	/**
+	 * Appends a slot at the MRU end of a list.
+	 * @param slot the slot to append
+	 * @param list the list to append to
+	 */
+	private void linkLast(int slot, int list) {
+		listOf[slot] = (byte)list;
+		prev[slot] = tails[list];
+		next[slot] = -1;
+		if (tails[list] < 0) {
+			heads[list] = slot;
+		} else {
+			next[tails[list]] = slot;
+		}
+		tails[list] = slot;
+		lengths[list]++;
+	}
+
+	/**
+	 * Writes the target size of T1, then the address IDs of every list, each from LRU to MRU.
+	 * @param out where to write the state
+	 * @param ids maps each ID to the number written for it
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	public void writeState(DataOutput out, IntUnaryOperator ids) throws IOException {
+		out.writeInt(p);
+		for (int list = T1; list <= B2; list++) {
+			out.writeInt(lengths[list]);
+			for (int slot = heads[list]; slot >= 0; slot = next[slot]) {
+				out.writeInt(ids.applyAsInt(keys[slot]));
+			}
+		}
+	}
+
+	/**
+	 * Restores the target size of T1 and the lists written by writeState into this empty cache.
+	 * @param in where to read the state from
+	 * @param ids maps each number written back to an ID
+	 * @throws IOException If an input exception occurred, or the state holds more items and ghosts than fit
+	 */
+	public void readState(DataInput in, IntUnaryOperator ids) throws IOException {
+		p = in.readInt();
+		if (p < 0 || p > capacity) {
+			throw new IOException("Cache state has a target out of range.");
+		}
+		int room = 2 * capacity;
+		for (int list = T1; list <= B2; list++) {
+			int length = in.readInt();
+			if (length < 0 || length > room) {
+				throw new IOException("Cache state does not fit the capacity.");
+			}
+			room -= length;
+			for (int i = 0; i < length; i++) {
+				int slot = freeSlot;
+				freeSlot = next[slot];
+				keys[slot] = ids.applyAsInt(in.readInt());
+				index.put(keys[slot], slot);
+				linkLast(slot, list);
+			}
+		}
+	}
+
+	/**
+	 * Returns a string representing all items in the cache, each list from LRU to MRU,
+	 * followed by the ghost lists and the target size of T1, e.g. T1[A B] T2[C] B1[D] B2[] p=1.
+	 * @return a string representing all items in the cache
+	 */
+	@Override
+	public String toString(){
+		StringBuilder sb = new StringBuilder();
+		for (int list = T1; list <= B2; list++) {
+			sb.append(LIST_NAMES[list]).append("[");
+			for (int slot = heads[list]; slot >= 0; slot = next[slot]) {
+				if (slot != heads[list]) {
+					sb.append(" ");
+				}
+				sb.append(addresses.name(keys[slot]));
+			}
+			sb.append("] ");
+		}
+		return sb.append("p=").append(p).toString();
+	}
+}
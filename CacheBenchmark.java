@@ -0,0 +1,328 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * A microbenchmark suite for the cache engines and the data structures under them.
+ * Every benchmark is warmed up, then measured over several iterations, and reported as
+ * throughput (operations per second) and bytes allocated per operation, the latter read
+ * from the per-thread allocation counter of the JVM.
+ * <p>
+ * Cache benchmarks replay a precomputed key sequence through {@code Cache.access(String)}
+ * and {@code IdCache.access(int)} under four workloads: uniform and Zipfian popularity,
+ * a scan that never reuses a key, and a loop slightly larger than the cache.
+ * Structure benchmarks cover {@code BasicMap}, {@code ProbingMap} and {@code SortedList.add}.
+ * <p>
+ * Usage: java CacheBenchmark [NameFilter], where only benchmarks whose name contains
+ * the filter are run.
+ */
+public class CacheBenchmark {
+
+	/**
+	 * Number of unmeasured iterations run before measuring.
+	 */
+	final static private int WARMUP_ITERATIONS = 3;
+
+	/**
+	 * Number of measured iterations.
+	 */
+	final static private int MEASURED_ITERATIONS = 5;
+
+	/**
+	 * Length of the key sequence replayed by each cache iteration.
+	 */
+	final static private int SEQUENCE_LENGTH = 1 << 20;
+
+	/**
+	 * Cache capacities benchmarked.
+	 */
+	final static private int[] CAPACITIES = {16, 256, 4096, 65536};
+
+	/**
+	 * Number of operations each data structure iteration aims for, repeating small structures.
+	 */
+	final static private int STRUCTURE_OPERATIONS = 1 << 16;
+
+	/**
+	 * Numbers of keys used for the data structure benchmarks.
+	 */
+	final static private int[] STRUCTURE_SIZES = {64, 1024, 4096};
+
+	/**
+	 * Names of the cache workloads.
+	 */
+	final static private String[] WORKLOADS = {"uniform", "zipf", "scan", "loop"};
+
+	/**
+	 * Result accumulator that keeps benchmark bodies from being optimized away.
+	 */
+	private static volatile long sink;
+
+	/**
+	 * The body of a benchmark.
+	 */
+	private interface Body {
+
+		/**
+		 * Runs one iteration of the benchmark.
+		 * @return number of operations performed
+		 */
+		long run();
+	}
+
+	/**
+	 * Runs all benchmarks whose name matches the optional filter and prints a CSV report.
+	 * @param args an optional name filter
+	 */
+	public static void main(String[] args) {
+		String filter = args.length > 0 ? args[0] : "";
+		System.out.println("benchmark,workload,size,ops_per_sec,bytes_per_op");
+		for (int cap : CAPACITIES) {
+			for (String workload : WORKLOADS) {
+				String[] names = names(workload(workload, cap, new Random(42)));
+				for (int type = 1; type <= Simulator.CACHE_NAMES.length; type++) {
+					if (Simulator.needsTrace(type)) {
+						//offline policies replay a Trace, not a key sequence
+						continue;
+					}
+					String name = Simulator.CACHE_NAMES[type - 1];
+					int cacheType = type;
+					if (("access" + name).contains(filter)) {
+						measure("access" + name, workload, cap, () -> replay(Simulator.createCache(cacheType, cap, new AddressTable()), names));
+					}
+					if (("accessId" + name).contains(filter)) {
+						AddressTable addresses = new AddressTable();
+						int[] ids = new int[names.length];
+						for (int i = 0; i < ids.length; i++) {
+							ids[i] = addresses.intern(names[i]);
+						}
+						measure("accessId" + name, workload, cap, () -> replay(Simulator.createCache(cacheType, cap, addresses), ids));
+					}
+				}
+			}
+		}
+		for (int n : STRUCTURE_SIZES) {
+			String[] keys = names(workload("uniform", n, new Random(7)));
+			if ("basicMapPutGet".contains(filter)) {
+				measure("basicMapPutGet", "uniform", n, () -> {
+					long ops = 0;
+					for (int r = 0; r < STRUCTURE_OPERATIONS / n; r++) {
+						BasicMap<String, Integer> map = new BasicMap<>();
+						ops += putGet(map::put, map::get, keys, n);
+					}
+					return ops;
+				});
+			}
+			if ("probingMapPutGet".contains(filter)) {
+				measure("probingMapPutGet", "uniform", n, () -> {
+					long ops = 0;
+					for (int r = 0; r < STRUCTURE_OPERATIONS / n; r++) {
+						ProbingMap<String, Integer> map = new ProbingMap<>();
+						ops += putGet(map::put, map::get, keys, n);
+					}
+					return ops;
+				});
+			}
+			if ("sortedListAdd".contains(filter)) {
+				int[] values = workload("uniform", n, new Random(11));
+				measure("sortedListAdd", "uniform", n, () -> {
+					long ops = 0;
+					for (int r = 0; r < STRUCTURE_OPERATIONS / n; r++) {
+						ops += sortedAdd(values, n);
+					}
+					return ops;
+				});
+			}
+		}
+	}
+
+	/**
+	 * Warms up and measures a benchmark, then prints its row of the report.
+	 * @param name benchmark name
+	 * @param workload workload name
+	 * @param size capacity or number of keys
+	 * @param body the benchmark body
+	 */
+	private static void measure(String name, String workload, int size, Body body) {
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			body.run();
+		}
+		com.sun.management.ThreadMXBean threads = allocationCounter();
+		long threadId = Thread.currentThread().getId();
+		long ops = 0;
+		long nanos = 0;
+		long bytes = 0;
+		for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+			long allocatedBefore = threads == null ? 0 : threads.getThreadAllocatedBytes(threadId);
+			long start = System.nanoTime();
+			ops += body.run();
+			nanos += System.nanoTime() - start;
+			long allocatedAfter = threads == null ? 0 : threads.getThreadAllocatedBytes(threadId);
+			bytes += allocatedAfter - allocatedBefore;
+		}
+		double opsPerSec = ops * 1e9 / Math.max(nanos, 1);
+		String bytesPerOp = threads == null ? "n/a" : String.format("%.2f", (double)bytes / ops);
+		System.out.format("%s,%s,%d,%.0f,%s\n", name, workload, size, opsPerSec, bytesPerOp);
+	}
+
+	/**
+	 * Returns the JVM counter of bytes allocated per thread, if available.
+	 * @return the counter, or null if the JVM does not provide it
+	 */
+	private static com.sun.management.ThreadMXBean allocationCounter() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean)bean;
+			if (counter.isThreadAllocatedMemorySupported()) {
+				counter.setThreadAllocatedMemoryEnabled(true);
+				return counter;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Generates the key sequence of a workload for a cache of the given capacity.
+	 * @param workload one of uniform, zipf, scan and loop
+	 * @param cap the cache capacity
+	 * @param random the source of randomness
+	 * @return the keys, as integers
+	 */
+	private static int[] workload(String workload, int cap, Random random) {
+		int[] keys = new int[SEQUENCE_LENGTH];
+		switch (workload) {
+			case "uniform":
+				for (int i = 0; i < keys.length; i++) {
+					keys[i] = random.nextInt(4 * cap);
+				}
+				break;
+			case "zipf":
+				double[] cdf = zipfCdf(16 * cap, 0.99);
+				for (int i = 0; i < keys.length; i++) {
+					int k = Arrays.binarySearch(cdf, random.nextDouble());
+					keys[i] = k >= 0 ? k : Math.min(-k - 1, cdf.length - 1);
+				}
+				break;
+			case "scan":
+				for (int i = 0; i < keys.length; i++) {
+					keys[i] = i;
+				}
+				break;
+			case "loop":
+				int loop = cap + cap / 4 + 1;
+				for (int i = 0; i < keys.length; i++) {
+					keys[i] = i % loop;
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown workload: " + workload);
+		}
+		return keys;
+	}
+
+	/**
+	 * Computes the cumulative distribution of a Zipf distribution.
+	 * @param n number of keys
+	 * @param skew the Zipf exponent
+	 * @return the probability of drawing a key at or below each rank
+	 */
+	private static double[] zipfCdf(int n, double skew) {
+		double[] cdf = new double[n];
+		double sum = 0;
+		for (int k = 0; k < n; k++) {
+			sum += 1 / Math.pow(k + 1, skew);
+			cdf[k] = sum;
+		}
+		for (int k = 0; k < n; k++) {
+			cdf[k] /= sum;
+		}
+		return cdf;
+	}
+
+	/**
+	 * Turns integer keys into address strings, built once so benchmarks do not measure string building.
+	 * @param keys the keys
+	 * @return an address per key, shared for equal keys
+	 */
+	private static String[] names(int[] keys) {
+		AddressTable table = new AddressTable();
+		String[] names = new String[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			names[i] = table.name(table.intern("k" + keys[i]));
+		}
+		return names;
+	}
+
+	/**
+	 * Replays addresses through a cache.
+	 * @param cache the cache
+	 * @param addrs the addresses to access
+	 * @return number of accesses
+	 */
+	private static long replay(Cache cache, String[] addrs) {
+		long hits = 0;
+		for (String addr : addrs) {
+			if (cache.access(addr)) {
+				hits++;
+			}
+		}
+		sink += hits;
+		return addrs.length;
+	}
+
+	/**
+	 * Replays address IDs through a cache.
+	 * @param cache the cache
+	 * @param ids the address IDs to access
+	 * @return number of accesses
+	 */
+	private static long replay(IdCache cache, int[] ids) {
+		long hits = 0;
+		for (int id : ids) {
+			if (cache.access(id)) {
+				hits++;
+			}
+		}
+		sink += hits;
+		return ids.length;
+	}
+
+	/**
+	 * Puts then gets the first n keys of a sequence in a map, given by its put and get operations.
+	 * @param put the put operation of the map
+	 * @param get the get operation of the map
+	 * @param keys the keys
+	 * @param n number of keys to use
+	 * @return number of operations
+	 */
+	private static long putGet(BiConsumer<String, Integer> put, Function<String, Integer> get, String[] keys, int n) {
+		long found = 0;
+		for (int i = 0; i < n; i++) {
+			put.accept(keys[i], i);
+		}
+		for (int i = 0; i < n; i++) {
+			if (get.apply(keys[i]) != null) {
+				found++;
+			}
+		}
+		sink += found;
+		return 2L * n;
+	}
+
+	/**
+	 * Adds the first n values of a sequence to a new SortedList.
+	 * @param values the values
+	 * @param n number of values to add
+	 * @return number of operations
+	 */
+	private static long sortedAdd(int[] values, int n) {
+		SortedList<Integer> list = new SortedList<>();
+		for (int i = 0; i < n; i++) {
+			list.add(values[i]);
+		}
+		sink += list.size();
+		return n;
+	}
+}
@@ -0,0 +1,41 @@
+/**
+ * An interface for observers of what a cache does on each access.
+ * A cache with a registered listener reports every access as a hit or a miss, and on a
+ * miss the eviction it makes room with, if any, and the insertion of the missing address:
+ * most policies evict first, W-TinyLFU inserts into its window first.
+ * Events carry only address IDs of the cache's {@code AddressTable}, so they
+ * are delivered without allocating anything, and a listener sees in O(1) per access what
+ * would otherwise take comparing toString() or nextToReplace() before and after it.
+ * Every event has an empty default, so a listener only implements the ones it needs.
+ */
+public interface CacheListener {
+
+	/**
+	 * This is the method called when an access is a hit.
+	 * @param id the address ID of the access
+	 */
+	default void hit(int id) {
+	}
+
+	/**
+	 * This is the method called when an access is a miss, before the cache changes.
+	 * @param id the address ID of the access
+	 */
+	default void miss(int id) {
+	}
+
+	/**
+	 * This is the method called when an item is evicted to make room for a missing address.
+	 * @param id the address ID of the evicted item
+	 */
+	default void evict(int id) {
+	}
+
+	/**
+	 * This is the method called when a missing address is inserted into the cache.
+	 * @param id the address ID of the inserted item
+	 */
+	default void insert(int id) {
+	}
+
+}
@@ -0,0 +1,578 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * A snapshot of a simulation in progress: the cache with its whole policy state, the
+ * position reached in the trace, and the counters.
+ * Snapshots are written in an explicit versioned binary format that keeps only what the
+ * policy holds or remembers: each such address once, then the policy state over numbers
+ * standing for those addresses, so a snapshot is as large as the cache however many
+ * addresses went through it. Loading interns the addresses into a new table and rebuilds
+ * the cache's indexes from the state. Snapshots are replaced atomically, so a crash while
+ * saving keeps the previous snapshot.
+ * A snapshot records a fingerprint of its trace, so it is not resumed on another one, and
+ * every count and length in it is checked against the rest of the file before anything
+ * is allocated for it, so a damaged snapshot is rejected rather than exhausting memory.
+ * A snapshot can be resumed where it was taken, or forked into a continuation with
+ * another trace that starts from the warmed-up cache.
+ */
+public class Checkpoint {
+
+	/**
+	 * First four bytes of a snapshot file.
+	 */
+	final static private int MAGIC = 0x43484B50;
+
+	/**
+	 * Version of the file format.
+	 */
+	final static private int VERSION = 3;
+
+	/**
+	 * Size of the file buffers in bytes.
+	 */
+	final static private int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Number of bytes at the start of a trace that go into its fingerprint.
+	 */
+	final static private int FINGERPRINT_BYTES = 1 << 16;
+
+	/**
+	 * Cache replacement policy, the Simulator option number.
+	 */
+	private int cacheType;
+
+	/**
+	 * Cache size.
+	 */
+	private int size;
+
+	/**
+	 * The cache, with the address table of the simulation.
+	 */
+	private IdCache cache;
+
+	/**
+	 * Number of accesses simulated.
+	 */
+	private long accesses;
+
+	/**
+	 * Number of hits among them.
+	 */
+	private long hits;
+
+	/**
+	 * Offset in the trace file right after the last access simulated, as given by TraceReader.offset().
+	 */
+	private long offset;
+
+	/**
+	 * Length in bytes of the per-access log or CSV file when the snapshot was taken, or -1.
+	 */
+	private long logLength;
+
+	/**
+	 * Length in bytes of the windowed hit-rate series when the snapshot was taken, or -1.
+	 */
+	private long seriesLength;
+
+	/**
+	 * Accesses, hits and evictions of the window of the hit-rate series still open when the
+	 * snapshot was taken, or null if there is no series.
+	 */
+	private long[] openWindow;
+
+	/**
+	 * Accesses per address of a detailed simulation, or null.
+	 */
+	private ProbingMap<String, Integer> accRecord;
+
+	/**
+	 * Hits per address of a detailed simulation, or null.
+	 */
+	private ProbingMap<String, Integer> hitRecord;
+
+	/**
+	 * Constructs a snapshot of a simulation. The objects are not copied, so the snapshot
+	 * must be saved before the simulation goes on.
+	 * @param cacheType cache replacement policy, the Simulator option number
+	 * @param size cache size
+	 * @param cache the cache
+	 * @param accesses number of accesses simulated
+	 * @param hits number of hits among them
+	 * @param offset offset in the trace file right after the last access simulated
+	 * @param logLength length in bytes of the per-access log or CSV file, or -1 if there is none
+	 * @param seriesLength length in bytes of the windowed hit-rate series, or -1 if there is none
+	 * @param openWindow accesses, hits and evictions of the open window of the series, or null if there is none
+	 * @param accRecord accesses per address of a detailed simulation, or null
+	 * @param hitRecord hits per address of a detailed simulation, or null
+	 * @throws IllegalArgumentException if cache is null, a counter is negative, or openWindow
+	 * is not three counters
+	 */
+	public Checkpoint(int cacheType, int size, IdCache cache, long accesses, long hits, long offset,
+			long logLength, long seriesLength, long[] openWindow, ProbingMap<String, Integer> accRecord, ProbingMap<String, Integer> hitRecord) {
+		if (cache == null) {
+			throw new IllegalArgumentException("Cache cannot be null.");
+		}
+		if (accesses < 0 || hits < 0 || offset < 0) {
+			throw new IllegalArgumentException("Counters cannot be negative.");
+		}
+		if (openWindow != null && openWindow.length != 3) {
+			throw new IllegalArgumentException("An open window has three counters.");
+		}
+		this.cacheType = cacheType;
+		this.size = size;
+		this.cache = cache;
+		this.accesses = accesses;
+		this.hits = hits;
+		this.offset = offset;
+		this.logLength = Math.max(logLength, -1);
+		this.seriesLength = Math.max(seriesLength, -1);
+		this.openWindow = openWindow;
+		this.accRecord = accRecord;
+		this.hitRecord = hitRecord;
+	}
+
+	/**
+	 * Writes the snapshot to a file, replacing it only once the snapshot is complete.
+	 * The file holds the header, the addresses the cache holds or remembers, the
+	 * policy state written by the cache over their numbers, and the records if any.
+	 * @param filename the name (path to) the snapshot file
+	 * @param traceFile the name (path to) the trace the simulation runs on
+	 * @throws IOException If an output exception occurred while writing, or an input one
+	 * while reading the trace's fingerprint
+	 */
+	public void save(String filename, String traceFile) throws IOException {
+		long fingerprint = fingerprint(traceFile);
+		//number the addresses as the cache writes them, so only those it mentions are kept
+		AddressTable addresses = cache.addresses();
+		ProbingMap<Integer, Integer> numbers = new ProbingMap<>(2 * size);
+		ArrayList<String> names = new ArrayList<>();
+		ByteArrayOutputStream state = new ByteArrayOutputStream();
+		cache.writeState(new DataOutputStream(state), id -> {
+			Integer number = numbers.get(id);
+			if (number == null) {
+				number = names.size();
+				numbers.put(id, number);
+				names.add(addresses.name(id));
+			}
+			return number;
+		});
+
+		Path target = Paths.get(filename).toAbsolutePath();
+		Path partial = target.resolveSibling(target.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partial), BUFFER_SIZE))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(fingerprint);
+			out.writeInt(cacheType);
+			out.writeInt(size);
+			out.writeLong(accesses);
+			out.writeLong(hits);
+			out.writeLong(offset);
+			out.writeLong(logLength);
+			out.writeLong(seriesLength);
+			out.writeBoolean(openWindow != null);
+			if (openWindow != null) {
+				for (long count : openWindow) {
+					out.writeLong(count);
+				}
+			}
+			out.writeInt(names.size());
+			for (String addr : names) {
+				writeString(out, addr);
+			}
+			state.writeTo(out);
+			out.writeBoolean(accRecord != null && hitRecord != null);
+			if (accRecord != null && hitRecord != null) {
+				writeRecord(out, accRecord);
+				writeRecord(out, hitRecord);
+			}
+		}
+		Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads a snapshot from a file. Every call returns an independent copy of the simulation,
+	 * with a new address table holding the addresses of the snapshot.
+	 * A cache tied to its own trace, as the OPT cache is, is rebuilt over that trace,
+	 * which is loaded again.
+	 * @param filename the name (path to) the snapshot file
+	 * @param traceFile the name (path to) the trace the snapshot was taken on, or null
+	 * if the simulation is to continue with another trace
+	 * @return the snapshot
+	 * @throws IOException If an input exception occurred, or the file is not a snapshot, or
+	 * was taken on another trace
+	 * @throws IllegalArgumentException if the cache is tied to its own trace and traceFile is null
+	 */
+	public static Checkpoint load(String filename, String traceFile) throws IOException {
+		Path path = Paths.get(filename);
+		long length = Files.size(path);
+		CountingInputStream file = new CountingInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE), length);
+		try (DataInputStream in = new DataInputStream(file)) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a checkpoint file: " + filename);
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported checkpoint version " + version + ": " + filename);
+			}
+			long fingerprint = in.readLong();
+			if (traceFile != null && fingerprint != fingerprint(traceFile)) {
+				throw new IOException("Checkpoint was taken on another trace than " + traceFile + ": " + filename);
+			}
+			int cacheType = in.readInt();
+			int size = in.readInt();
+			long accesses = in.readLong();
+			long hits = in.readLong();
+			long offset = in.readLong();
+			long logLength = in.readLong();
+			long seriesLength = in.readLong();
+			long[] openWindow = null;
+			if (in.readBoolean()) {
+				openWindow = new long[] {in.readLong(), in.readLong(), in.readLong()};
+			}
+			if (cacheType < 1 || cacheType > Simulator.CACHE_NAMES.length || size <= 0 || accesses < 0 || hits < 0 || offset < 0
+					|| (openWindow != null && (openWindow[1] < 0 || openWindow[2] < 0 || openWindow[1] > openWindow[0] || openWindow[2] > openWindow[0]))) {
+				throw new IOException("Not a checkpoint file: " + filename);
+			}
+
+			IdCache cache;
+			if (Simulator.needsTrace(cacheType)) {
+				if (traceFile == null) {
+					throw new IllegalArgumentException("the " + Simulator.CACHE_NAMES[cacheType - 1] + " cache cannot continue with another trace.");
+				}
+				cache = Simulator.createCache(cacheType, size, Trace.load(traceFile));
+			}
+			else {
+				cache = Simulator.createCache(cacheType, size, new AddressTable());
+			}
+			//a cache tied to its trace finds the addresses there, any other one starts a table with them
+			AddressTable addresses = cache.addresses();
+			//a cache holds or remembers at most twice its size, ghosts and test entries included
+			int count = readCount(in, file, 4, 2L * size);
+			int[] ids = new int[count];
+			for (int number = 0; number < count; number++) {
+				String addr = readString(in, file);
+				ids[number] = Simulator.needsTrace(cacheType) ? addresses.find(addr) : addresses.intern(addr);
+				if (ids[number] < 0) {
+					throw new IOException("Checkpoint does not match the trace: " + traceFile);
+				}
+			}
+			cache.readState(in, number -> ids[number]);
+
+			ProbingMap<String, Integer> accRecord = null;
+			ProbingMap<String, Integer> hitRecord = null;
+			if (in.readBoolean()) {
+				accRecord = readRecord(in, file);
+				hitRecord = readRecord(in, file);
+			}
+			return new Checkpoint(cacheType, size, cache, accesses, hits, offset, logLength, seriesLength, openWindow, accRecord, hitRecord);
+		}
+		catch (IndexOutOfBoundsException e) {
+			throw new IOException("Not a checkpoint file: " + filename, e);
+		}
+	}
+
+	/**
+	 * Writes a string as its length in bytes followed by its UTF-8 bytes.
+	 * @param out where to write the string
+	 * @param value the string
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	private static void writeString(DataOutput out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a count, checking it against what is left of the file before anything is
+	 * allocated for it.
+	 * @param in where to read the count from
+	 * @param file the file in is reading, to tell how much of it is left
+	 * @param bytesEach the fewest bytes each counted item takes in the file
+	 * @param max the largest count allowed
+	 * @return the count
+	 * @throws IOException If an input exception occurred, or the count is negative, above max,
+	 * or more than the rest of the file can hold
+	 */
+	private static int readCount(DataInput in, CountingInputStream file, int bytesEach, long max) throws IOException {
+		int count = in.readInt();
+		if (count < 0 || count > max || count > file.left() / bytesEach) {
+			throw new IOException("Count out of range in checkpoint: " + count);
+		}
+		return count;
+	}
+
+	/**
+	 * Reads a string written by writeString.
+	 * @param in where to read the string from
+	 * @param file the file in is reading, to tell how much of it is left
+	 * @return the string
+	 * @throws IOException If an input exception occurred, or the length does not fit the rest of the file
+	 */
+	private static String readString(DataInput in, CountingInputStream file) throws IOException {
+		int length = readCount(in, file, 1, Integer.MAX_VALUE);
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes the counts per address of a detailed simulation.
+	 * @param out where to write the record
+	 * @param record the counts per address
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	private static void writeRecord(DataOutput out, ProbingMap<String, Integer> record) throws IOException {
+		out.writeInt(record.size());
+		for (String addr : record.keys()) {
+			writeString(out, addr);
+			out.writeInt(record.get(addr));
+		}
+	}
+
+	/**
+	 * Reads the counts per address written by writeRecord.
+	 * @param in where to read the record from
+	 * @param file the file in is reading, to tell how much of it is left
+	 * @return the counts per address
+	 * @throws IOException If an input exception occurred, or the size does not fit the rest of the file
+	 */
+	private static ProbingMap<String, Integer> readRecord(DataInput in, CountingInputStream file) throws IOException {
+		//each entry takes at least a string length and a count
+		int count = readCount(in, file, 8, Integer.MAX_VALUE);
+		ProbingMap<String, Integer> record = new ProbingMap<>();
+		for (int i = 0; i < count; i++) {
+			String addr = readString(in, file);
+			record.put(addr, in.readInt());
+		}
+		return record;
+	}
+
+	/**
+	 * Computes the fingerprint of a trace file: a CRC-32 of its length and its first bytes.
+	 * It tells traces apart without reading them whole, as a checkpoint is saved often.
+	 * @param traceFile the name (path to) the trace
+	 * @return the fingerprint
+	 * @throws IOException If an input exception occurred while reading the trace
+	 */
+	private static long fingerprint(String traceFile) throws IOException {
+		Path path = Paths.get(traceFile);
+		CRC32 crc = new CRC32();
+		long length = Files.size(path);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			crc.update((int)(length >>> shift));
+		}
+		try (InputStream in = Files.newInputStream(path)) {
+			crc.update(in.readNBytes(FINGERPRINT_BYTES));
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * An input stream that keeps track of how many bytes of the underlying file are left,
+	 * so counts and lengths read from a snapshot can be checked before they are allocated.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+
+		/**
+		 * Number of bytes of the file not read yet.
+		 */
+		private long left;
+
+		/**
+		 * Constructs a stream over a file of known length.
+		 * @param in the stream of the file
+		 * @param length the length of the file in bytes
+		 */
+		CountingInputStream(InputStream in, long length) {
+			super(in);
+			this.left = length;
+		}
+
+		/**
+		 * Returns the number of bytes of the file not read yet.
+		 * @return the number of bytes left
+		 */
+		long left() {
+			return left;
+		}
+
+		/**
+		 * Reads the next byte.
+		 * @return the byte, or -1 at the end of the file
+		 * @throws IOException If an input exception occurred
+		 */
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				left--;
+			}
+			return b;
+		}
+
+		/**
+		 * Reads up to len bytes into an array.
+		 * @param b the array
+		 * @param off where in b to start
+		 * @param len the largest number of bytes to read
+		 * @return the number of bytes read, or -1 at the end of the file
+		 * @throws IOException If an input exception occurred
+		 */
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				left -= n;
+			}
+			return n;
+		}
+
+		/**
+		 * Skips up to n bytes.
+		 * @param n the largest number of bytes to skip
+		 * @return the number of bytes skipped
+		 * @throws IOException If an input exception occurred
+		 */
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			left -= skipped;
+			return skipped;
+		}
+
+		/**
+		 * Tells that marks are not supported, as they would throw the count off.
+		 * @return false
+		 */
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns a snapshot for a continuation with another trace: the same cache, but counted
+	 * from the start of that trace, with outputs of its own.
+	 * @return the snapshot, sharing the cache of this one
+	 * @throws IllegalArgumentException if the cache is tied to its own trace, as the OPT cache is
+	 */
+	public Checkpoint fork() {
+		if (Simulator.needsTrace(cacheType)) {
+			throw new IllegalArgumentException("the " + Simulator.CACHE_NAMES[cacheType - 1] + " cache cannot continue with another trace.");
+		}
+		return new Checkpoint(cacheType, size, cache, 0, 0, 0, -1, -1, null,
+				accRecord != null ? new ProbingMap<>() : null, hitRecord != null ? new ProbingMap<>() : null);
+	}
+
+	/**
+	 * Returns the cache replacement policy.
+	 * @return the Simulator option number
+	 */
+	public int cacheType() {
+		return cacheType;
+	}
+
+	/**
+	 * Returns the cache size.
+	 * @return the cache size
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the cache.
+	 * @return the cache, with its address table
+	 */
+	public IdCache cache() {
+		return cache;
+	}
+
+	/**
+	 * Returns the number of accesses simulated.
+	 * @return the number of accesses
+	 */
+	public long accesses() {
+		return accesses;
+	}
+
+	/**
+	 * Returns the number of hits among the accesses simulated.
+	 * @return the number of hits
+	 */
+	public long hits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the offset in the trace file right after the last access simulated.
+	 * @return the offset, for TraceReader.seek
+	 */
+	public long offset() {
+		return offset;
+	}
+
+	/**
+	 * Returns the length of the per-access log or CSV file when the snapshot was taken,
+	 * so a resumed simulation can drop what was written after it and append.
+	 * @return the length in bytes, or -1 if the simulation wrote no such file
+	 */
+	public long logLength() {
+		return logLength;
+	}
+
+	/**
+	 * Returns the length of the windowed hit-rate series when the snapshot was taken,
+	 * so a resumed simulation can drop what was written after it and append.
+	 * @return the length in bytes, or -1 if the simulation wrote no series
+	 */
+	public long seriesLength() {
+		return seriesLength;
+	}
+
+	/**
+	 * Returns the counters of the window of the hit-rate series still open when the snapshot
+	 * was taken, so a resumed series writes that window's row whole.
+	 * @return the accesses, hits and evictions of the window, or null if the simulation wrote no series
+	 */
+	public long[] openWindow() {
+		return openWindow;
+	}
+
+	/**
+	 * Returns the accesses per address of a detailed simulation.
+	 * @return the record, or null if the simulation is not detailed
+	 */
+	public ProbingMap<String, Integer> accRecord() {
+		return accRecord;
+	}
+
+	/**
+	 * Returns the hits per address of a detailed simulation.
+	 * @return the record, or null if the simulation is not detailed
+	 */
+	public ProbingMap<String, Integer> hitRecord() {
+		return hitRecord;
+	}
+}
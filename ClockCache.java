@@ -0,0 +1,272 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Cache implementing CLOCK (second chance) replacement policy.
+ * Address IDs sit in a fixed-size circular array with one reference bit each, and an
+ * index maps IDs to slots. A hit only sets the bit of its slot. On a miss the hand
+ * sweeps the array, clearing set bits, and replaces the first item whose bit was
+ * already clear, so recently used items survive one more revolution, approximating LRU
+ * without moving anything on a hit.
+ * A registered {@code CacheListener} is told of every access.
+ */
+public class ClockCache implements IdCache {
+
+	/**
+	 * The max number of items in the cache.
+	 */
+	private int capacity;
+
+	/**
+	 * Table mapping address IDs to addresses.
+	 */
+	private AddressTable addresses;
+
+	/**
+	 * Whether addresses is this cache's own table, in which evicted addresses are released.
+	 */
+	private boolean ownsTable;
+
+	/**
+	 * Circular array of cached address IDs.
+	 */
+	private int[] slots;
+
+	/**
+	 * Reference bit of each slot, 1 if the item was hit since the hand last passed it.
+	 */
+	private byte[] referenced;
+
+	/**
+	 * Position of the clock hand, the next slot considered for replacement.
+	 */
+	private int hand;
+
+	/**
+	 * Number of items stored in slots.
+	 */
+	private int size;
+
+	/**
+	 * Maps each cached address ID to its position in slots.
+	 */
+	private SlotIndex index;
+
+	/**
+	 * Listener told of every access, or null.
+	 */
+	private CacheListener listener;
+
+	/**
+	 * Constructs a CLOCK cache with the specified capacity and its own address table.
+	 * The cache releases the ID of every address it evicts, so the table stays the size of
+	 * the cache however many distinct addresses go through access(String).
+	 * @param cap the capacity of the cache
+	 * @throws IllegalArgumentException if cap is not positive
+	 */
+	public ClockCache(int cap){
+		this(cap, new AddressTable());
+		this.ownsTable = true;
+	}
+
+	/**
+	 * Constructs a CLOCK cache with the specified capacity over a shared address table.
+	 * @param cap the capacity of the cache
+	 * @param addresses the table the IDs passed to access(int) come from
+	 * @throws IllegalArgumentException if cap is not positive or addresses is null
+	 */
+	public ClockCache(int cap, AddressTable addresses){
+		if (cap <= 0) {
+			throw new IllegalArgumentException("Capacity cannot be negative.");
+		}
+		if (addresses == null) {
+			throw new IllegalArgumentException("Address table cannot be null.");
+		}
+		this.capacity = cap;
+		this.addresses = addresses;
+		this.slots = new int[cap];
+		this.referenced = new byte[cap];
+		this.index = new SlotIndex(addresses.size());
+	}
+
+	/**
+	 * Checks if the cache is full.
+	 * @return true if the cache is full, false otherwise
+	 */
+	public boolean isFull(){
+		return size == capacity;
+	}
+
+	/**
+	 * Reports the maximum number of items allowed in the cache.
+	 * @return the capacity of the cache
+	 */
+	public int capacity(){
+		return capacity;
+	}
+
+	/**
+	 * Reports the number of items stored in the cache.
+	 * @return the number of items stored in the cache
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Reports the table used to map IDs back to addresses.
+	 * @return the address table of this cache
+	 */
+	public AddressTable addresses(){
+		return addresses;
+	}
+
+	/**
+	 * Returns the item that will be evicted if the next access is a miss.
+	 * @return the item to be evicted, or null if no item will be evicted
+	 */
+	public String nextToReplace(){
+		if (!isFull()) {
+			return null;
+		}
+		//the first clear bit from the hand, or the hand itself once a full sweep clears them all
+		for (int i = 0, slot = hand; i < capacity; i++, slot = (slot + 1 == capacity) ? 0 : slot + 1) {
+			if (referenced[slot] == 0) {
+				return addresses.name(slots[slot]);
+			}
+		}
+		return addresses.name(slots[hand]);
+	}
+
+	/**
+	 * Reports whether an address is in the cache, without counting as an access.
+	 * @param id the ID of the address
+	 * @return true if the address is in the cache, false otherwise
+	 */
+	public boolean contains(int id){
+		return id >= 0 && index.get(id) >= 0;
+	}
+
+	/**
+	 * Registers a listener to be told of every access from now on, replacing any previous one.
+	 * @param listener the listener, or null to remove it
+	 */
+	public void setListener(CacheListener listener){
+		this.listener = listener;
+	}
+
+	/**
+	 * Determines whether the access to addr is a hit or miss.
+	 * @param addr the address to be accessed
+	 * @return true if the access is a hit, false if it's a miss
+	 * @throws IllegalArgumentException if addr is null
+	 */
+	public boolean access(String addr){
+		return access(addresses.intern(addr));
+	}
+
+	/**
+	 * Determines whether the access to an address ID is a hit or miss.
+	 * @param id the ID of the address to be accessed
+	 * @return true if the access is a hit, false if it's a miss
+	 * @throws IllegalArgumentException if id is not an ID of addresses()
+	 */
+	public boolean access(int id){
+		if (id < 0 || id >= addresses.size()) {
+			throw new IllegalArgumentException("Unknown address ID: " + id);
+		}
+		int slot = index.get(id);
+		if (slot >= 0) {
+			referenced[slot] = 1;
+			if (listener != null) {
+				listener.hit(id);
+			}
+			return true;
+		}
+		if (listener != null) {
+			listener.miss(id);
+		}
+		if (isFull()) {
+			while (referenced[hand] != 0) {
+				referenced[hand] = 0;
+				hand = (hand + 1 == capacity) ? 0 : hand + 1;
+			}
+			slot = hand;
+			index.remove(slots[slot]);
+			if (listener != null) {
+				listener.evict(slots[slot]);
+			}
+			if (ownsTable) {
+				addresses.release(slots[slot]);
+			}
+			hand = (hand + 1 == capacity) ? 0 : hand + 1;
+		} else {
+			slot = size++;
+		}
+		slots[slot] = id;
+		referenced[slot] = 0;
+		index.put(id, slot);
+		if (listener != null) {
+			listener.insert(id);
+		}
+		return false;
+	}
+
+	/**
+	 * Writes the cached address IDs with their reference bits, in clock order from the hand.
+	 * @param out where to write the state
+	 * @param ids maps each ID to the number written for it
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	public void writeState(DataOutput out, IntUnaryOperator ids) throws IOException {
+		out.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			int slot = (hand + i) % capacity;
+			out.writeInt(ids.applyAsInt(slots[slot]));
+			out.writeByte(referenced[slot]);
+		}
+	}
+
+	/**
+	 * Restores the clock written by writeState into this empty cache, with the hand at slot 0.
+	 * @param in where to read the state from
+	 * @param ids maps each number written back to an ID
+	 * @throws IOException If an input exception occurred, or the state holds more items than fit
+	 */
+	public void readState(DataInput in, IntUnaryOperator ids) throws IOException {
+		int count = in.readInt();
+		if (count < 0 || count > capacity) {
+			throw new IOException("Cache state does not fit the capacity.");
+		}
+		for (int slot = 0; slot < count; slot++) {
+			slots[slot] = ids.applyAsInt(in.readInt());
+			referenced[slot] = in.readByte();
+			index.put(slots[slot], slot);
+		}
+		hand = 0;
+		size = count;
+	}
+
+	/**
+	 * Returns a string representing all items in the cache, in clock order from the hand,
+	 * with a * after each item whose reference bit is set, e.g. A B* C.
+	 * @return a string representing all items in the cache
+	 */
+	@Override
+	public String toString(){
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			int slot = (hand + i) % capacity;
+			if (i > 0) {
+				sb.append(" ");
+			}
+			sb.append(addresses.name(slots[slot]));
+			if (referenced[slot] != 0) {
+				sb.append("*");
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,620 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Cache implementing CLOCK-Pro replacement policy.
+ * Resident items are hot or cold. A cold item starts a test period when it enters, and
+ * if it is evicted during that period it stays on the clock as a non-resident test entry,
+ * without data. A hit on a cold item in its test period, or a miss on a test entry, shows
+ * a reuse distance shorter than that of the hot items, so the item turns hot; a miss on a
+ * test entry also grows the share of memory given to cold items, and a test entry that
+ * expires unused shrinks it. Three hands sweep a single circular list: the cold hand
+ * evicts cold items, the hot hand demotes unreferenced hot items to cold and ends the
+ * test periods it passes, and the test hand ends test periods to bound the test entries.
+ * A hit only sets a reference bit. The list is linked through int arrays of slots sized
+ * for the capacity plus as many test entries, with an index from address ID to slot.
+ * A registered {@code CacheListener} is told of every access.
+ */
+public class ClockProCache implements IdCache {
+
+	/**
+	 * Status of a resident cold item.
+	 */
+	final static private byte COLD = 0;
+
+	/**
+	 * Status of a resident hot item.
+	 */
+	final static private byte HOT = 1;
+
+	/**
+	 * Status of a non-resident test entry.
+	 */
+	final static private byte TEST = 2;
+
+	/**
+	 * Status of a test entry expired during a trial eviction, left on the clock to be undone.
+	 */
+	final static private byte EXPIRED = 3;
+
+	/**
+	 * The max number of resident items in the cache.
+	 */
+	private int capacity;
+
+	/**
+	 * Target number of resident cold items, adapted between 1 and the capacity.
+	 */
+	private int coldTarget;
+
+	/**
+	 * Number of resident hot items.
+	 */
+	private int hotCount;
+
+	/**
+	 * Number of resident cold items.
+	 */
+	private int coldCount;
+
+	/**
+	 * Number of non-resident test entries.
+	 */
+	private int testCount;
+
+	/**
+	 * Table mapping address IDs to addresses.
+	 */
+	private AddressTable addresses;
+
+	/**
+	 * Whether addresses is this cache's own table, in which forgotten addresses are released.
+	 */
+	private boolean ownsTable;
+
+	/**
+	 * Maps each resident or test address ID to its slot.
+	 */
+	private SlotIndex index;
+
+	/**
+	 * Address ID stored in each slot.
+	 */
+	private int[] keys;
+
+	/**
+	 * Status of each slot: COLD, HOT or TEST.
+	 */
+	private byte[] status;
+
+	/**
+	 * Reference bit of each slot, 1 if the item was hit since a hand last passed it.
+	 */
+	private byte[] referenced;
+
+	/**
+	 * Test period bit of each cold slot, 1 while its test period runs.
+	 */
+	private byte[] testing;
+
+	/**
+	 * Previous slot on the clock.
+	 */
+	private int[] prev;
+
+	/**
+	 * Next slot on the clock, in the direction the hands move.
+	 * Unused slots are chained through this array as a free list.
+	 */
+	private int[] next;
+
+	/**
+	 * Slot under the hot hand, -1 if the clock is empty.
+	 * New entries are inserted just before it, so it reaches them last.
+	 */
+	private int handHot = -1;
+
+	/**
+	 * Slot under the cold hand, -1 if the clock is empty.
+	 */
+	private int handCold = -1;
+
+	/**
+	 * Slot under the test hand, -1 if the clock is empty.
+	 */
+	private int handTest = -1;
+
+	/**
+	 * First unused slot, or -1 if all are in use.
+	 */
+	private int freeSlot;
+
+	/**
+	 * Whether the hands are only trying out an eviction, journaling the slots they change.
+	 */
+	private boolean trial;
+
+	/**
+	 * Slots changed by a trial eviction, each followed by its status, reference and test bits before the change.
+	 */
+	private int[] journal = new int[64];
+
+	/**
+	 * Number of ints used in journal.
+	 */
+	private int journalLength;
+
+	/**
+	 * Listener told of every access, or null.
+	 */
+	private CacheListener listener;
+
+	/**
+	 * Constructs a CLOCK-Pro cache with the specified capacity and its own address table.
+	 * The cache releases the ID of every address it forgets, evicted and past its test
+	 * period, so the table stays within twice the size of the cache however many distinct
+	 * addresses go through access(String).
+	 * @param cap the capacity of the cache
+	 * @throws IllegalArgumentException if cap is not positive
+	 */
+	public ClockProCache(int cap){
+		this(cap, new AddressTable());
+		this.ownsTable = true;
+	}
+
+	/**
+	 * Constructs a CLOCK-Pro cache with the specified capacity over a shared address table.
+	 * Resident items and test entries together never exceed twice the capacity.
+	 * @param cap the capacity of the cache
+	 * @param addresses the table the IDs passed to access(int) come from
+	 * @throws IllegalArgumentException if cap is not positive or addresses is null
+	 */
+	public ClockProCache(int cap, AddressTable addresses){
+		if (cap <= 0) {
+			throw new IllegalArgumentException("Capacity cannot be negative.");
+		}
+		if (addresses == null) {
+			throw new IllegalArgumentException("Address table cannot be null.");
+		}
+		this.capacity = cap;
+		this.coldTarget = cap;
+		this.addresses = addresses;
+		this.index = new SlotIndex(addresses.size());
+		this.keys = new int[2 * cap];
+		this.status = new byte[2 * cap];
+		this.referenced = new byte[2 * cap];
+		this.testing = new byte[2 * cap];
+		this.prev = new int[2 * cap];
+		this.next = new int[2 * cap];
+		for (int slot = 0; slot < 2 * cap; slot++) {
+			next[slot] = slot + 1 < 2 * cap ? slot + 1 : -1;
+		}
+	}
+
+	/**
+	 * Checks if the cache is full.
+	 * @return true if the cache is full, false otherwise
+	 */
+	public boolean isFull(){
+		return size() == capacity;
+	}
+
+	/**
+	 * Reports the maximum number of items allowed in the cache.
+	 * @return the capacity of the cache
+	 */
+	public int capacity(){
+		return capacity;
+	}
+
+	/**
+	 * Reports the number of items stored in the cache, not counting test entries.
+	 * @return the number of items stored in the cache
+	 */
+	public int size(){
+		return hotCount + coldCount;
+	}
+
+	/**
+	 * Reports the table used to map IDs back to addresses.
+	 * @return the address table of this cache
+	 */
+	public AddressTable addresses(){
+		return addresses;
+	}
+
+	/**
+	 * Returns the item that will be evicted if the next access is a miss on an address
+	 * that is not a test entry either. The hands are run as a trial that journals the slots
+	 * they change and then undoes them, so this takes as long as the eviction itself and
+	 * allocates nothing once the journal has grown to fit.
+	 * @return the item to be evicted, or null if no item will be evicted
+	 */
+	public String nextToReplace(){
+		if (!isFull()) {
+			return null;
+		}
+		int hot = handHot, cold = handCold, target = coldTarget;
+		int hots = hotCount, colds = coldCount, tests = testCount;
+		trial = true;
+		int victim = evict();
+		trial = false;
+		while (journalLength > 0) {
+			journalLength -= 2;
+			int slot = journal[journalLength];
+			int bits = journal[journalLength + 1];
+			status[slot] = (byte)(bits >> 16);
+			referenced[slot] = (byte)(bits >> 8);
+			testing[slot] = (byte)bits;
+		}
+		handHot = hot;
+		handCold = cold;
+		coldTarget = target;
+		hotCount = hots;
+		coldCount = colds;
+		testCount = tests;
+		return addresses.name(keys[victim]);
+	}
+
+	/**
+	 * Records the bits of a slot about to be changed, if this is a trial eviction.
+	 * @param slot the slot
+	 */
+	private void save(int slot) {
+		if (!trial) {
+			return;
+		}
+		if (journalLength == journal.length) {
+			journal = Arrays.copyOf(journal, 2 * journal.length);
+		}
+		journal[journalLength++] = slot;
+		journal[journalLength++] = status[slot] << 16 | referenced[slot] << 8 | testing[slot];
+	}
+
+	/**
+	 * Reports whether an address is hot or cold, without counting as an access; a test entry is not.
+	 * @param id the ID of the address
+	 * @return true if the address is in the cache, false otherwise
+	 */
+	public boolean contains(int id){
+		int slot = id >= 0 ? index.get(id) : -1;
+		return slot >= 0 && status[slot] != TEST;
+	}
+
+	/**
+	 * Registers a listener to be told of every access from now on, replacing any previous one.
+	 * @param listener the listener, or null to remove it
+	 */
+	public void setListener(CacheListener listener){
+		this.listener = listener;
+	}
+
+	/**
+	 * Determines whether the access to addr is a hit or miss.
+	 * Performs necessary updating to maintain the CLOCK-Pro cache.
+	 * @param addr the address to be accessed
+	 * @return true if the access is a hit, false if it's a miss
+	 * @throws IllegalArgumentException if addr is null
+	 */
+	public boolean access(String addr){
+		return access(addresses.intern(addr));
+	}
+
+	/**
+	 * Determines whether the access to an address ID is a hit or miss.
+	 * Performs necessary updating to maintain the CLOCK-Pro cache.
+	 * @param id the ID of the address to be accessed
+	 * @return true if the access is a hit, false if it's a miss
+	 * @throws IllegalArgumentException if id is not an ID of addresses()
+	 */
+	public boolean access(int id){
+		if (id < 0 || id >= addresses.size()) {
+			throw new IllegalArgumentException("Unknown address ID: " + id);
+		}
+		int slot = index.get(id);
+		if (slot >= 0 && status[slot] != TEST) {
+			referenced[slot] = 1;
+			if (listener != null) {
+				listener.hit(id);
+			}
+			return true;
+		}
+		if (listener != null) {
+			listener.miss(id);
+		}
+		if (slot >= 0) {
+			//a test entry came back within its test period: give cold items more room, return it hot
+			if (coldTarget < capacity) {
+				coldTarget++;
+			}
+			remove(slot);
+			testCount--;
+			evict();
+			add(id, HOT);
+			balanceHot();
+		} else {
+			evict();
+			add(id, COLD);
+		}
+		if (listener != null) {
+			listener.insert(id);
+		}
+		return false;
+	}
+
+	/**
+	 * Runs the cold hand until it has evicted an item, if the cache is full.
+	 * A trial stops as soon as the item is chosen.
+	 * @return the slot of the evicted item, or -1 if the cache was not full
+	 */
+	private int evict() {
+		int victim = -1;
+		while (hotCount + coldCount >= capacity) {
+			int slot = handCold;
+			handCold = next[slot];
+			if (status[slot] != COLD) {
+				continue;
+			}
+			if (referenced[slot] != 0) {
+				save(slot);
+				referenced[slot] = 0;
+				if (testing[slot] != 0) {
+					//reused within its test period
+					status[slot] = HOT;
+					coldCount--;
+					hotCount++;
+					balanceHot();
+				} else {
+					testing[slot] = 1;
+				}
+				continue;
+			}
+			victim = slot;
+			if (trial) {
+				break;
+			}
+			coldCount--;
+			if (listener != null) {
+				listener.evict(keys[slot]);
+			}
+			if (testing[slot] != 0) {
+				status[slot] = TEST;
+				testCount++;
+				while (testCount > capacity) {
+					runHandTest();
+				}
+			} else {
+				forget(slot);
+			}
+		}
+		return victim;
+	}
+
+	/**
+	 * Runs the hot hand until the hot items fit in the memory not reserved for cold items.
+	 */
+	private void balanceHot() {
+		while (hotCount > capacity - coldTarget) {
+			int slot = handHot;
+			handHot = next[slot];
+			if (status[slot] == HOT) {
+				save(slot);
+				if (referenced[slot] != 0) {
+					referenced[slot] = 0;
+				} else {
+					status[slot] = COLD;
+					testing[slot] = 0;
+					hotCount--;
+					coldCount++;
+				}
+			} else {
+				endTest(slot);
+			}
+		}
+	}
+
+	/**
+	 * Runs the test hand until it has ended one test period.
+	 */
+	private void runHandTest() {
+		while (true) {
+			int slot = handTest;
+			handTest = next[slot];
+			if (status[slot] == TEST || testing[slot] != 0) {
+				endTest(slot);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Ends the test period of a cold item, or expires a test entry, shrinking the cold share.
+	 * @param slot the slot passed by a hand
+	 */
+	private void endTest(int slot) {
+		if (status[slot] == TEST) {
+			if (trial) {
+				save(slot);
+				status[slot] = EXPIRED;
+			} else {
+				forget(slot);
+			}
+			testCount--;
+			if (coldTarget > 1) {
+				coldTarget--;
+			}
+		} else if (status[slot] == COLD) {
+			save(slot);
+			testing[slot] = 0;
+		}
+	}
+
+	/**
+	 * Puts an address in a free slot just before the hot hand.
+	 * @param id the address ID
+	 * @param kind HOT or COLD; a cold item starts its test period
+	 */
+	private void add(int id, byte kind) {
+		int slot = freeSlot;
+		freeSlot = next[slot];
+		keys[slot] = id;
+		status[slot] = kind;
+		referenced[slot] = 0;
+		testing[slot] = (byte)(kind == COLD ? 1 : 0);
+		index.put(id, slot);
+		if (handHot < 0) {
+			prev[slot] = next[slot] = slot;
+			handHot = handCold = handTest = slot;
+		} else {
+			prev[slot] = prev[handHot];
+			next[slot] = handHot;
+			next[prev[handHot]] = slot;
+			prev[handHot] = slot;
+		}
+		if (kind == HOT) {
+			hotCount++;
+		} else {
+			coldCount++;
+		}
+	}
+
+	/**
+	 * Takes a slot off the clock for good, releasing its address ID if the table is this cache's own.
+	 * @param slot the slot to release
+	 */
+	private void forget(int slot) {
+		int id = keys[slot];
+		remove(slot);
+		if (ownsTable) {
+			addresses.release(id);
+		}
+	}
+
+	/**
+	 * Takes a slot off the clock, forgets its address and returns it to the free list.
+	 * A hand on the slot moves on to the next one.
+	 * @param slot the slot to release
+	 */
+	private void remove(int slot) {
+		if (next[slot] == slot) {
+			handHot = handCold = handTest = -1;
+		} else {
+			if (handHot == slot) {
+				handHot = next[slot];
+			}
+			if (handCold == slot) {
+				handCold = next[slot];
+			}
+			if (handTest == slot) {
+				handTest = next[slot];
+			}
+			next[prev[slot]] = next[slot];
+			prev[next[slot]] = prev[slot];
+		}
+		index.remove(keys[slot]);
+		next[slot] = freeSlot;
+		freeSlot = slot;
+	}
+
+	/**
+	 * Writes the cold target, then every entry of the clock from the hot hand with its
+	 * status and bits, and where the cold and test hands stand.
+	 * @param out where to write the state
+	 * @param ids maps each ID to the number written for it
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	public void writeState(DataOutput out, IntUnaryOperator ids) throws IOException {
+		int count = hotCount + coldCount + testCount;
+		int coldHand = 0, testHand = 0;
+		for (int i = 0, slot = handHot; i < count; i++, slot = next[slot]) {
+			if (slot == handCold) {
+				coldHand = i;
+			}
+			if (slot == handTest) {
+				testHand = i;
+			}
+		}
+		out.writeInt(coldTarget);
+		out.writeInt(count);
+		out.writeInt(coldHand);
+		out.writeInt(testHand);
+		for (int i = 0, slot = handHot; i < count; i++, slot = next[slot]) {
+			out.writeInt(ids.applyAsInt(keys[slot]));
+			out.writeByte(status[slot]);
+			out.writeByte(referenced[slot]);
+			out.writeByte(testing[slot]);
+		}
+	}
+
+	/**
+	 * Restores the clock written by writeState into this empty cache.
+	 * @param in where to read the state from
+	 * @param ids maps each number written back to an ID
+	 * @throws IOException If an input exception occurred, or the state holds more entries than fit
+	 */
+	public void readState(DataInput in, IntUnaryOperator ids) throws IOException {
+		coldTarget = in.readInt();
+		int count = in.readInt();
+		int coldHand = in.readInt();
+		int testHand = in.readInt();
+		if (coldTarget < 1 || coldTarget > capacity || count < 0 || count > 2 * capacity
+				|| (count > 0 && (coldHand < 0 || coldHand >= count || testHand < 0 || testHand >= count))) {
+			throw new IOException("Cache state does not fit the capacity.");
+		}
+		for (int i = 0; i < count; i++) {
+			int id = ids.applyAsInt(in.readInt());
+			byte kind = in.readByte();
+			if (kind != COLD && kind != HOT && kind != TEST) {
+				throw new IOException("Cache state has an unknown status: " + kind);
+			}
+			add(id, kind == HOT ? HOT : COLD);
+			int slot = prev[handHot];
+			referenced[slot] = in.readByte();
+			testing[slot] = in.readByte();
+			if (kind == TEST) {
+				status[slot] = TEST;
+				coldCount--;
+				testCount++;
+			}
+			if (i == coldHand) {
+				handCold = slot;
+			}
+			if (i == testHand) {
+				handTest = slot;
+			}
+		}
+		if (hotCount + coldCount > capacity || testCount > capacity) {
+			throw new IOException("Cache state does not fit the capacity.");
+		}
+	}
+
+	/**
+	 * Returns a string representing all items in the cache, in clock order from the hot hand,
+	 * each tagged H (hot) or C (cold) with a * if referenced, followed by the test entries
+	 * and the target number of cold items, e.g. H:A C:B* test[D] cold=2.
+	 * @return a string representing all items in the cache
+	 */
+	@Override
+	public String toString(){
+		StringBuilder sb = new StringBuilder();
+		StringBuilder tests = new StringBuilder();
+		for (int i = 0, slot = handHot; slot >= 0 && (i == 0 || slot != handHot); i++, slot = next[slot]) {
+			if (status[slot] == TEST) {
+				if (tests.length() > 0) {
+					tests.append(" ");
+				}
+				tests.append(addresses.name(keys[slot]));
+			} else {
+				sb.append(status[slot] == HOT ? "H:" : "C:").append(addresses.name(keys[slot]));
+				if (referenced[slot] != 0) {
+					sb.append("*");
+				}
+				sb.append(" ");
+			}
+		}
+		return sb.append("test[").append(tests).append("] cold=").append(coldTarget).toString();
+	}
+}
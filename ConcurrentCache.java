@@ -0,0 +1,424 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A thread-safe cache that partitions addresses across independently locked segments.
+ * Each address hashes to one segment, a cache of any of the Simulator's online replacement
+ * policies with its own address table, and the capacity is split evenly among the
+ * segments. With many more segments than threads, as by default, threads seldom meet.
+ * <p>
+ * A thread alone on a segment simply runs the policy under the segment's lock, which
+ * costs about as much as a synchronized cache, and the segment makes exactly the decisions
+ * of its policy. Once a thread finds the lock taken, the segment is contended and hits no
+ * longer take the lock: the address is looked up in the segment's table and policy under
+ * an optimistic read of the lock, and if no miss changed the segment meanwhile, the hit
+ * only records the address in a small ring buffer of the segment. Misses still take the
+ * lock, and once enough of them in a row find it free, the segment goes back to locking
+ * every access.
+ * <p>
+ * The recorded hits are replayed into the policy in one batch, under the lock, when the
+ * buffer fills up and whenever the lock is taken anyway, for a miss or to inspect the
+ * cache; each recorded address is looked up again then, and skipped if it has left the
+ * cache since. A thread that finds the lock busy leaves the batch to its holder, and hits
+ * recorded faster than they are replayed overwrite older ones, so under heavy contention
+ * the policy sees a sample of the hits, which for LRU or LFU still ranks the hot
+ * addresses first.
+ * <p>
+ * Each segment's policy releases the IDs of the addresses it forgets, so memory stays
+ * proportional to the capacity however many distinct addresses go through the cache.
+ */
+public class ConcurrentCache implements Cache {
+
+	/**
+	 * Number of hits each segment buffers before replaying them, a power of two.
+	 */
+	final static private int READ_BUFFER = 16;
+
+	/**
+	 * Number of misses in a row finding a contended segment's lock free before its hits take the lock again.
+	 */
+	final static private int QUIET_MISSES = 64;
+
+	/**
+	 * The max number of items in the cache.
+	 */
+	private int capacity;
+
+	/**
+	 * The segments.
+	 */
+	private Segment[] segments;
+
+	/**
+	 * Number of bits of the spread hash selecting a segment.
+	 */
+	private int segmentBits;
+
+	/**
+	 * Constructs a concurrent cache with a number of segments suited to the machine:
+	 * four per available processor, rounded up to a power of two, but no more than the capacity allows.
+	 * @param cacheType replacement policy of the segments, an online Simulator option
+	 * @param cap the capacity of the cache
+	 * @throws IllegalArgumentException if cap is not positive or cacheType is not an online option
+	 */
+	public ConcurrentCache(int cacheType, int cap){
+		this(cacheType, cap, defaultSegments(cap));
+	}
+
+	/**
+	 * Constructs a concurrent cache with the given number of segments.
+	 * @param cacheType replacement policy of the segments, an online Simulator option
+	 * @param cap the capacity of the cache
+	 * @param segments number of segments, a power of two no larger than cap
+	 * @throws IllegalArgumentException if cap is not positive, segments is invalid or cacheType is not an online option
+	 */
+	public ConcurrentCache(int cacheType, int cap, int segments){
+		if (cap <= 0) {
+			throw new IllegalArgumentException("Capacity cannot be negative.");
+		}
+		if (segments <= 0 || Integer.bitCount(segments) != 1 || segments > cap) {
+			throw new IllegalArgumentException("Segments must be a power of two no larger than the capacity.");
+		}
+		this.capacity = cap;
+		this.segmentBits = Integer.numberOfTrailingZeros(segments);
+		this.segments = new Segment[segments];
+		for (int i = 0; i < segments; i++) {
+			//spread the remainder over the first segments
+			int share = cap / segments + (i < cap % segments ? 1 : 0);
+			this.segments[i] = new Segment(cacheType, share);
+		}
+	}
+
+	/**
+	 * Chooses the default number of segments for a capacity.
+	 * @param cap the capacity of the cache
+	 * @return four segments per available processor rounded up to a power of two, capped by cap
+	 * @throws IllegalArgumentException if cap is not positive
+	 */
+	private static int defaultSegments(int cap) {
+		if (cap <= 0) {
+			throw new IllegalArgumentException("Capacity cannot be negative.");
+		}
+		int wanted = Integer.highestOneBit(Math.max(1, 4 * Runtime.getRuntime().availableProcessors() - 1)) << 1;
+		return Math.min(wanted, Integer.highestOneBit(cap));
+	}
+
+	/**
+	 * Checks if the cache is full, that is if every segment is full.
+	 * @return true if the cache is full, false otherwise
+	 */
+	public boolean isFull(){
+		return size() == capacity;
+	}
+
+	/**
+	 * Reports the maximum number of items allowed in the cache.
+	 * @return the capacity of the cache
+	 */
+	public int capacity(){
+		return capacity;
+	}
+
+	/**
+	 * Reports the number of items stored in the cache. Segments are counted one at a time,
+	 * so under concurrent accesses the total may mix moments.
+	 * @return the number of items stored in the cache
+	 */
+	public int size(){
+		int size = 0;
+		for (Segment segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Reports the number of segments.
+	 * @return the number of segments
+	 */
+	public int segments(){
+		return segments.length;
+	}
+
+	/**
+	 * Returns an item that will be evicted if the next access is a miss in its segment:
+	 * the victim of the first full segment. Which item is actually evicted depends on the
+	 * segment the missing address hashes to; see nextToReplace(String).
+	 * @return an item to be evicted, or null if no segment is full
+	 */
+	public String nextToReplace(){
+		for (Segment segment : segments) {
+			String victim = segment.nextToReplace();
+			if (victim != null) {
+				return victim;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the item that will be evicted if the next access, to addr, is a miss.
+	 * @param addr the address of the next access
+	 * @return the item to be evicted, or null if no item will be evicted
+	 * @throws IllegalArgumentException if addr is null
+	 */
+	public String nextToReplace(String addr){
+		return segmentFor(addr).nextToReplace();
+	}
+
+	/**
+	 * Determines whether the access to addr is a hit or miss. A hit never waits for a lock;
+	 * a miss waits only for the segment of addr.
+	 * @param addr the address to be accessed
+	 * @return true if the access is a hit, false if it's a miss
+	 * @throws IllegalArgumentException if addr is null
+	 */
+	public boolean access(String addr){
+		return segmentFor(addr).access(addr);
+	}
+
+	/**
+	 * Returns the segment an address belongs to.
+	 * @param addr the address
+	 * @return its segment
+	 * @throws IllegalArgumentException if addr is null
+	 */
+	private Segment segmentFor(String addr) {
+		if (addr == null) {
+			throw new IllegalArgumentException("Address cannot be null.");
+		}
+		if (segmentBits == 0) {
+			return segments[0];
+		}
+		//use the high bits of a multiplicative hash, independent of the low bits the segment tables use
+		return segments[(addr.hashCode() * 0x9E3779B9) >>> (32 - segmentBits)];
+	}
+
+	/**
+	 * Returns a string representing all items in the cache, segment by segment, each as
+	 * its policy prints it, separated by " | ".
+	 * @return a string representing all items in the cache
+	 */
+	@Override
+	public String toString(){
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < segments.length; i++) {
+			if (i > 0) {
+				sb.append(" | ");
+			}
+			sb.append(segments[i]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * One segment: a policy over its own address table, the lock guarding both and the
+	 * buffer of hits not yet replayed.
+	 */
+	private static class Segment {
+
+		/**
+		 * Lock held to change the policy or the address table, read optimistically on hits.
+		 */
+		private StampedLock lock = new StampedLock();
+
+		/**
+		 * The replacement policy, releasing the IDs it forgets from its own table.
+		 */
+		private IdCache cache;
+
+		/**
+		 * The address table of the policy.
+		 */
+		private AddressTable addresses;
+
+		/**
+		 * Ring of the addresses of recent hits, null for an empty entry.
+		 */
+		private AtomicReferenceArray<String> reads = new AtomicReferenceArray<>(READ_BUFFER);
+
+		/**
+		 * Number of hits recorded so far, the next of which goes to entry readCount % READ_BUFFER.
+		 */
+		private AtomicLong readCount = new AtomicLong();
+
+		/**
+		 * Number of recorded hits already replayed or overwritten, used under the lock.
+		 */
+		private long drained;
+
+		/**
+		 * Whether a thread found the lock taken lately, so that hits go through the read buffer.
+		 */
+		private volatile boolean contended;
+
+		/**
+		 * Number of misses in a row that found the lock free since the segment became contended, used under the lock.
+		 */
+		private int quiet;
+
+		/**
+		 * Constructs an empty segment.
+		 * @param cacheType replacement policy, an online Simulator option
+		 * @param cap the capacity of the segment
+		 * @throws IllegalArgumentException if cap is not positive or cacheType is not an online option
+		 */
+		Segment(int cacheType, int cap) {
+			this.cache = Simulator.createCache(cacheType, cap);
+			this.addresses = cache.addresses();
+		}
+
+		/**
+		 * Determines whether the access to addr is a hit or miss. Until the segment is
+		 * contended, the access takes the lock; after that, a hit is recorded without it
+		 * and only a miss takes the lock, waiting for it if need be.
+		 * @param addr the address to be accessed
+		 * @return true if the access is a hit, false if it's a miss
+		 */
+		boolean access(String addr) {
+			long stamp = 0;
+			if (!contended) {
+				stamp = lock.tryWriteLock();
+				if (stamp == 0) {
+					contended = true;
+				}
+			}
+			if (stamp == 0) {
+				if (holds(addr)) {
+					record(addr);
+					return true;
+				}
+				stamp = lock.tryWriteLock();
+				boolean free = stamp != 0;
+				if (!free) {
+					stamp = lock.writeLock();
+				}
+				quiet = free ? quiet + 1 : 0;
+				if (quiet == QUIET_MISSES) {
+					contended = false;
+					quiet = 0;
+				}
+			}
+			try {
+				drain();
+				return cache.access(addr);
+			}
+			finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+
+		/**
+		 * Records a hit taken without the lock, replaying the buffer if this hit fills it
+		 * and the lock is free.
+		 * @param addr the address of the hit
+		 */
+		private void record(String addr) {
+			long n = readCount.getAndIncrement();
+			reads.set((int)(n & (READ_BUFFER - 1)), addr);
+			if ((n & (READ_BUFFER - 1)) == READ_BUFFER - 1) {
+				long stamp = lock.tryWriteLock();
+				if (stamp != 0) {
+					try {
+						drain();
+					}
+					finally {
+						lock.unlockWrite(stamp);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Checks, without locking, whether an address is in the segment.
+		 * @param addr the address
+		 * @return true if the address was in the segment and no writer got in the way,
+		 * false if it was not or the answer is in doubt
+		 */
+		private boolean holds(String addr) {
+			long stamp = lock.tryOptimisticRead();
+			if (stamp == 0) {
+				return false;
+			}
+			boolean resident;
+			try {
+				int id = addresses.find(addr);
+				resident = id >= 0 && cache.contains(id);
+			}
+			catch (RuntimeException e) {
+				//a lookup racing a writer may read a half-changed table; validation would fail anyway
+				return false;
+			}
+			return resident && lock.validate(stamp);
+		}
+
+		/**
+		 * Replays the hits recorded since the last replay into the policy, skipping those
+		 * whose address has left the cache since. Must be called holding the write lock.
+		 */
+		private void drain() {
+			long count = readCount.get();
+			for (long n = Math.max(drained, count - READ_BUFFER); n < count; n++) {
+				String addr = reads.getAndSet((int)(n & (READ_BUFFER - 1)), null);
+				if (addr != null) {
+					int id = addresses.find(addr);
+					if (id >= 0 && cache.contains(id)) {
+						cache.access(id);
+					}
+				}
+			}
+			drained = count;
+		}
+
+		/**
+		 * Reports the number of items stored in the segment.
+		 * @return the number of items stored in the segment
+		 */
+		int size() {
+			long stamp = lock.tryOptimisticRead();
+			int size = cache.size();
+			if (!lock.validate(stamp)) {
+				stamp = lock.readLock();
+				try {
+					size = cache.size();
+				}
+				finally {
+					lock.unlockRead(stamp);
+				}
+			}
+			return size;
+		}
+
+		/**
+		 * Returns the item that will be evicted if the next access to the segment is a miss.
+		 * @return the item to be evicted, or null if the segment is not full
+		 */
+		String nextToReplace() {
+			long stamp = lock.writeLock();
+			try {
+				drain();
+				return cache.isFull() ? cache.nextToReplace() : null;
+			}
+			finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+
+		/**
+		 * Returns a string representing all items in the segment, as its policy prints it.
+		 * @return a string representing all items in the segment
+		 */
+		@Override
+		public String toString() {
+			long stamp = lock.writeLock();
+			try {
+				drain();
+				return cache.toString();
+			}
+			finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+	}
+}
@@ -0,0 +1,94 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * An access sink writing one CSV row per access with columns
+ * index, address, result, size, full and next_to_replace.
+ * Unlike the text log it never renders the whole cache, so each row costs constant time.
+ */
+public class CsvSink implements AccessSink {
+
+	/**
+	 * Size of the output buffer in chars.
+	 */
+	final static private int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Buffered destination of the rows.
+	 */
+	private Writer out;
+
+	/**
+	 * Constructs a sink writing rows to the given destination, starting with the header row.
+	 * @param out where to write the rows
+	 * @throws IOException If an output exception occurred while writing the header
+	 * @throws IllegalArgumentException if out is null
+	 */
+	public CsvSink(Writer out) throws IOException {
+		this(out, true);
+	}
+
+	/**
+	 * Constructs a sink writing rows to the given destination, starting with the header row
+	 * unless the rows are appended to a file that has it already.
+	 * @param out where to write the rows
+	 * @param header whether to write the header row first
+	 * @throws IOException If an output exception occurred while writing the header
+	 * @throws IllegalArgumentException if out is null
+	 */
+	public CsvSink(Writer out, boolean header) throws IOException {
+		if (out == null) {
+			throw new IllegalArgumentException("Output cannot be null.");
+		}
+		this.out = new BufferedWriter(out, BUFFER_SIZE);
+		if (header) {
+			this.out.write("index,address,result,size,full,next_to_replace\n");
+		}
+	}
+
+	/**
+	 * Writes the row of one access.
+	 * @param index position of the access in the trace, starting at 0
+	 * @param id the address ID of the access in cache.addresses()
+	 * @param hit whether the access was a cache hit
+	 * @param cache the cache after the access
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	public void access(long index, int id, boolean hit, IdCache cache) throws IOException {
+		out.write(Long.toString(index));
+		out.write(',');
+		writeField(cache.addresses().name(id));
+		out.write(hit ? ",hit," : ",miss,");
+		out.write(Integer.toString(cache.size()));
+		out.write(cache.isFull() ? ",true," : ",false,");
+		String next = cache.nextToReplace();
+		if (next != null) {
+			writeField(next);
+		}
+		out.write('\n');
+	}
+
+	/**
+	 * Writes a field, quoting it if it contains a comma, quote or line break.
+	 * @param field the field to write
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	private void writeField(String field) throws IOException {
+		if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+			out.write(field);
+			return;
+		}
+		out.write('"');
+		out.write(field.replace("\"", "\"\""));
+		out.write('"');
+	}
+
+	/**
+	 * Writes out the buffered rows.
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	public void flush() throws IOException {
+		out.flush();
+	}
+}
@@ -0,0 +1,144 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A gzip decompressor running on its own thread, one chunk ahead of its reader.
+ * The decompressed bytes are handed over in a few fixed buffers that cycle between the
+ * two threads through a pair of bounded queues, so decompression overlaps with whatever
+ * the reader does with the previous chunk, nothing is allocated per chunk, and memory
+ * stays bounded however large the file is.
+ */
+public class Decompressor implements Closeable {
+
+	/**
+	 * Size of each chunk in bytes.
+	 */
+	final static private int CHUNK_SIZE = 1 << 20;
+
+	/**
+	 * Number of chunks cycling between the threads.
+	 */
+	final static private int CHUNKS = 4;
+
+	/**
+	 * Empty chunk marking the end of the data.
+	 */
+	final static private ByteBuffer END = ByteBuffer.allocate(0);
+
+	/**
+	 * Chunks ready to be filled by the decompressing thread.
+	 */
+	private BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(CHUNKS);
+
+	/**
+	 * Filled chunks, in file order, ready to be read, followed by END.
+	 */
+	private BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<>(CHUNKS + 1);
+
+	/**
+	 * Chunk last returned by next, given back to the decompressing thread on the following call.
+	 */
+	private ByteBuffer current;
+
+	/**
+	 * Exception that stopped the decompressing thread, if any.
+	 */
+	private volatile IOException failure;
+
+	/**
+	 * The decompressing thread.
+	 */
+	private Thread worker;
+
+	/**
+	 * Opens a gzip file and starts decompressing it in the background.
+	 * @param filename the name (path to) a gzip file
+	 * @throws IOException If an input exception occurred while opening filename
+	 */
+	public Decompressor(String filename) throws IOException {
+		InputStream in = new GZIPInputStream(Files.newInputStream(Paths.get(filename)), CHUNK_SIZE / 4);
+		for (int i = 0; i < CHUNKS; i++) {
+			free.add(ByteBuffer.allocate(CHUNK_SIZE));
+		}
+		worker = new Thread(() -> pump(in), "gunzip " + filename);
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Decompresses the whole input into chunks, until its end, an error, or an interrupt from close.
+	 * @param in the decompressing stream
+	 */
+	private void pump(InputStream in) {
+		try (in) {
+			while (true) {
+				ByteBuffer chunk = free.take();
+				chunk.clear();
+				int n = 0;
+				while (chunk.hasRemaining() && (n = in.read(chunk.array(), chunk.position(), chunk.remaining())) > 0) {
+					chunk.position(chunk.position() + n);
+				}
+				chunk.flip();
+				if (chunk.hasRemaining()) {
+					full.put(chunk);
+				}
+				if (n < 0) {
+					break;
+				}
+			}
+		}
+		catch (IOException e) {
+			failure = e;
+		}
+		catch (InterruptedException e) {
+			return;
+		}
+		//there is always room for END, since at most CHUNKS chunks are ever queued
+		full.add(END);
+	}
+
+	/**
+	 * Returns the next chunk of decompressed bytes, waiting for it if needed.
+	 * The chunk is only valid until the following call.
+	 * @return the chunk, positioned at its first byte, or null at the end of the data
+	 * @throws IOException If the data could not be decompressed
+	 */
+	public ByteBuffer next() throws IOException {
+		if (current != null) {
+			free.add(current);
+			current = null;
+		}
+		ByteBuffer chunk;
+		try {
+			chunk = full.take();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while decompressing.", e);
+		}
+		if (chunk == END) {
+			//leave END for any later call
+			full.add(END);
+			if (failure != null) {
+				throw failure;
+			}
+			return null;
+		}
+		current = chunk;
+		return chunk;
+	}
+
+	/**
+	 * Stops the decompressing thread and closes the file.
+	 */
+	public void close() {
+		worker.interrupt();
+	}
+}
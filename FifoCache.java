@@ -1,9 +1,15 @@
-import java.util.Iterator;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.IntUnaryOperator;
 
 /**
  * Cache implementing FIFO (First-In, First-Out) replacement policy.
+ * Address IDs are kept in a fixed-size circular array in arrival order, with an index
+ * from ID to slot for membership, so lookups are constant time and a miss only
+ * overwrites one slot. A registered {@code CacheListener} is told of every access.
  */
-public class FifoCache implements Cache {
+public class FifoCache implements IdCache {
 
 	/**
 	 * A variable that we have to keep track of the capacity of the list.
@@ -11,21 +17,69 @@ public class FifoCache implements Cache {
 	private int capacity;
 
 	/**
-	 * The list for the cache.
+	 * Table mapping address IDs to addresses.
 	 */
-	private BasicList<String> storage;
+	private AddressTable addresses;
 
 	/**
-	 * Constructs a FIFO cache with the specified capacity.
+	 * Whether addresses is this cache's own table, in which evicted addresses are released.
+	 */
+	private boolean ownsTable;
+
+	/**
+	 * Circular array of cached address IDs, oldest at position first.
+	 */
+	private int[] slots;
+
+	/**
+	 * Position of the first in (oldest) item in slots.
+	 */
+	private int first;
+
+	/**
+	 * Number of items stored in slots.
+	 */
+	private int size;
+
+	/**
+	 * Maps each cached address ID to its position in slots.
+	 */
+	private SlotIndex index;
+
+	/**
+	 * Listener told of every access, or null.
+	 */
+	private CacheListener listener;
+
+	/**
+	 * Constructs a FIFO cache with the specified capacity and its own address table.
+	 * The cache releases the ID of every address it evicts, so the table stays the size of
+	 * the cache however many distinct addresses go through access(String).
 	 * @param cap the capacity of the cache
 	 * @throws IllegalArgumentException if cap is not positive
 	 */
 	public FifoCache(int cap){
+		this(cap, new AddressTable());
+		this.ownsTable = true;
+	}
+
+	/**
+	 * Constructs a FIFO cache with the specified capacity over a shared address table.
+	 * @param cap the capacity of the cache
+	 * @param addresses the table the IDs passed to access(int) come from
+	 * @throws IllegalArgumentException if cap is not positive or addresses is null
+	 */
+	public FifoCache(int cap, AddressTable addresses){
 		if(cap <= 0) {
 			throw new IllegalArgumentException("Capacity cannot be negative.");
 		}
+		if (addresses == null) {
+			throw new IllegalArgumentException("Address table cannot be null.");
+		}
 		this.capacity = cap;
-		this.storage = new BasicList<>();
+		this.addresses = addresses;
+		this.slots = new int[cap];
+		this.index = new SlotIndex(addresses.size());
 	}
 
 	/**
@@ -33,7 +87,7 @@ public class FifoCache implements Cache {
 	 * @return true if the cache is full, false otherwise
 	 */
 	public boolean isFull(){
-        return storage.size() == capacity;
+		return size == capacity;
 	}
 
 	/**
@@ -49,7 +103,15 @@ public class FifoCache implements Cache {
 	 * @return the number of items stored in the cache
 	 */
 	public int size(){
-		return storage.size();
+		return size;
+	}
+
+	/**
+	 * Reports the table used to map IDs back to addresses.
+	 * @return the address table of this cache
+	 */
+	public AddressTable addresses(){
+		return addresses;
 	}
 
 	/**
@@ -57,10 +119,27 @@ public class FifoCache implements Cache {
 	 * @return the item to be evicted, or null if no item will be evicted
 	 */
 	public String nextToReplace(){
-		if (storage.getFirst() == null) {
+		if (size == 0) {
 			return null;
 		}
-		return storage.getFirst();
+		return addresses.name(slots[first]);
+	}
+
+	/**
+	 * Reports whether an address is in the cache, without counting as an access.
+	 * @param id the ID of the address
+	 * @return true if the address is in the cache, false otherwise
+	 */
+	public boolean contains(int id){
+		return id >= 0 && index.get(id) >= 0;
+	}
+
+	/**
+	 * Registers a listener to be told of every access from now on, replacing any previous one.
+	 * @param listener the listener, or null to remove it
+	 */
+	public void setListener(CacheListener listener){
+		this.listener = listener;
 	}
 
 	/**
@@ -70,27 +149,95 @@ public class FifoCache implements Cache {
 	 * @throws IllegalArgumentException if addr is null
 	 */
 	public boolean access(String addr){
-		if (addr == null) {
-			throw new IllegalArgumentException("Address cannot be null.");
+		return access(addresses.intern(addr));
+	}
+
+	/**
+	 * Determines whether the access to an address ID is a hit or miss.
+	 * @param id the ID of the address to be accessed
+	 * @return true if the access is a hit, false if it's a miss
+	 * @throws IllegalArgumentException if id is not an ID of addresses()
+	 */
+	public boolean access(int id){
+		if (id < 0 || id >= addresses.size()) {
+			throw new IllegalArgumentException("Unknown address ID: " + id);
+		}
+		if (index.get(id) >= 0) {
+			if (listener != null) {
+				listener.hit(id);
+			}
+			return true;
 		}
-        for (String item : storage) {
-            if (item.equals(addr)) {
-                return true;
-            }
-        }
+		if (listener != null) {
+			listener.miss(id);
+		}
+		int slot;
 		if (isFull()) {
-			storage.removeFirst();
+			slot = first;
+			index.remove(slots[slot]);
+			if (listener != null) {
+				listener.evict(slots[slot]);
+			}
+			if (ownsTable) {
+				addresses.release(slots[slot]);
+			}
+			first = (first + 1 == capacity) ? 0 : first + 1;
+		} else {
+			slot = size++;
+		}
+		slots[slot] = id;
+		index.put(id, slot);
+		if (listener != null) {
+			listener.insert(id);
 		}
-		storage.addLast(addr);
 		return false;
 	}
 
+	/**
+	 * Writes the cached address IDs from first in to last in.
+	 * @param out where to write the state
+	 * @param ids maps each ID to the number written for it
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	public void writeState(DataOutput out, IntUnaryOperator ids) throws IOException {
+		out.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			out.writeInt(ids.applyAsInt(slots[(first + i) % capacity]));
+		}
+	}
+
+	/**
+	 * Restores the cached address IDs written by writeState into this empty cache.
+	 * @param in where to read the state from
+	 * @param ids maps each number written back to an ID
+	 * @throws IOException If an input exception occurred, or the state holds more items than fit
+	 */
+	public void readState(DataInput in, IntUnaryOperator ids) throws IOException {
+		int count = in.readInt();
+		if (count < 0 || count > capacity) {
+			throw new IOException("Cache state does not fit the capacity.");
+		}
+		for (int slot = 0; slot < count; slot++) {
+			slots[slot] = ids.applyAsInt(in.readInt());
+			index.put(slots[slot], slot);
+		}
+		first = 0;
+		size = count;
+	}
+
 	/**
 	 * Returns a string representing all items in the cache, following the order from first in to last in.
 	 * @return a string representing all items in the cache
 	 */
 	@Override
 	public String toString(){
-		return storage.listToString();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				sb.append(" ");
+			}
+			sb.append(addresses.name(slots[(first + i) % capacity]));
+		}
+		return sb.toString();
 	}
-}	
+}
@@ -0,0 +1,183 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A count-min sketch estimating how often each address has been accessed recently.
+ * Addresses are counted by the hash code of their name, not by ID, so the counts do not
+ * depend on how IDs are given out: an address handed a released ID starts afresh, and the
+ * counts can be saved and restored with the cache.
+ * Counters are 4 bits wide and packed sixteen to a long, and each address is counted in four
+ * of them, one per row, with the estimate being the smallest of the four. Once the number
+ * of recorded accesses reaches ten times the table size, every counter is halved, so old
+ * popularity fades and the counters never saturate for long.
+ * The table holds one long per cache entry (rounded up to a power of two), so its memory
+ * is a fixed 8 to 16 bytes per entry whatever the length of the trace.
+ */
+public class FrequencySketch {
+
+	/**
+	 * Seeds of the four hash functions, one per row.
+	 */
+	final static private int[] SEEDS = {0x97CB3127, 0xB7E15163, 0x9E3779B9, 0x85EBCA6B};
+
+	/**
+	 * Mask keeping the low three bits of every counter, used to halve all counters at once.
+	 */
+	final static private long RESET_MASK = 0x7777777777777777L;
+
+	/**
+	 * Largest value of a 4-bit counter.
+	 */
+	final static private int MAX_COUNT = 15;
+
+	/**
+	 * Counters, sixteen per long; row i uses counters 4i to 4i+3 of each long.
+	 */
+	private long[] table;
+
+	/**
+	 * Number of accesses recorded since the last halving.
+	 */
+	private int additions;
+
+	/**
+	 * Number of accesses after which all counters are halved.
+	 */
+	private int sampleSize;
+
+	/**
+	 * Constructs a sketch for a cache of the given capacity.
+	 * @param capacity number of entries of the cache using the sketch
+	 * @throws IllegalArgumentException if capacity is not positive
+	 */
+	public FrequencySketch(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+		int length = Integer.highestOneBit(Math.min(capacity, 1 << 30));
+		if (length < capacity) {
+			length <<= 1;
+		}
+		table = new long[Math.max(length, 8)];
+		sampleSize = (int)Math.min(10L * table.length, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Records an access to an address.
+	 * @param key the hash code of the address accessed
+	 */
+	public void increment(int key) {
+		int hash = spread(key);
+		boolean added = false;
+		for (int row = 0; row < 4; row++) {
+			added |= incrementAt(indexOf(hash, row), offsetOf(hash, row));
+		}
+		if (added && ++additions == sampleSize) {
+			reset();
+		}
+	}
+
+	/**
+	 * Estimates how often an address has been accessed recently.
+	 * @param key the hash code of the address
+	 * @return the estimated count, from 0 to 15
+	 */
+	public int frequency(int key) {
+		int hash = spread(key);
+		int min = MAX_COUNT;
+		for (int row = 0; row < 4; row++) {
+			int count = (int)((table[indexOf(hash, row)] >>> offsetOf(hash, row)) & 0xF);
+			min = Math.min(min, count);
+		}
+		return min;
+	}
+
+	/**
+	 * Writes the counters and the number of accesses recorded since the last halving.
+	 * @param out where to write the state
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	public void writeState(DataOutput out) throws IOException {
+		out.writeInt(table.length);
+		for (long counters : table) {
+			out.writeLong(counters);
+		}
+		out.writeInt(additions);
+	}
+
+	/**
+	 * Restores the state written by writeState from a sketch of the same capacity.
+	 * @param in where to read the state from
+	 * @throws IOException If an input exception occurred, or the state is of another size
+	 */
+	public void readState(DataInput in) throws IOException {
+		if (in.readInt() != table.length) {
+			throw new IOException("Sketch state does not fit the capacity.");
+		}
+		for (int i = 0; i < table.length; i++) {
+			table[i] = in.readLong();
+		}
+		additions = in.readInt();
+		if (additions < 0 || additions >= sampleSize) {
+			throw new IOException("Sketch state has too many additions.");
+		}
+	}
+
+	/**
+	 * Increments one counter unless it is saturated.
+	 * @param index the long holding the counter
+	 * @param offset bit offset of the counter in the long
+	 * @return true if the counter was incremented
+	 */
+	private boolean incrementAt(int index, int offset) {
+		long mask = 0xFL << offset;
+		if ((table[index] & mask) != mask) {
+			table[index] += 1L << offset;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Halves every counter.
+	 */
+	private void reset() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		additions /= 2;
+	}
+
+	/**
+	 * Scrambles a hash code so that similar codes spread over the whole table.
+	 * @param key the hash code of an address
+	 * @return the scrambled hash
+	 */
+	private static int spread(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Returns the long holding the counter of a hash in a row.
+	 * @param hash the scrambled hash
+	 * @param row the row, 0 to 3
+	 * @return the index in the table
+	 */
+	private int indexOf(int hash, int row) {
+		int h = (hash + SEEDS[row]) * SEEDS[row];
+		h += h >>> 16;
+		return h & (table.length - 1);
+	}
+
+	/**
+	 * Returns the bit offset of the counter of a hash in a row, within its long.
+	 * @param hash the scrambled hash
+	 * @param row the row, 0 to 3
+	 * @return the bit offset, a multiple of 4
+	 */
+	private static int offsetOf(int hash, int row) {
+		return ((row << 2) + ((hash >>> (row << 3)) & 3)) << 2;
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ * A HyperLogLog estimate of the number of distinct values in a stream of 64-bit hashes.
+ * The top bits of each hash pick one of 2^p registers, which keeps the longest run of
+ * leading zeros seen in the remaining bits; the harmonic mean of the registers then
+ * estimates the count with a relative standard error of about 1.04/sqrt(2^p), in 2^p
+ * bytes whatever the number of values. Small counts fall back to linear counting.
+ * The hashes must be well mixed, as those of {@code TraceReader} are.
+ */
+public class HyperLogLog {
+
+	/**
+	 * Largest number of index bits.
+	 */
+	final static private int MAX_BITS = 18;
+
+	/**
+	 * Number of bits of a hash picking its register.
+	 */
+	private int bits;
+
+	/**
+	 * Longest run of leading zeros plus one seen by each register.
+	 */
+	private byte[] registers;
+
+	/**
+	 * Constructs an empty estimate with 2^bits registers.
+	 * @param bits number of index bits, in [4, 18]
+	 * @throws IllegalArgumentException if bits is out of range
+	 */
+	public HyperLogLog(int bits) {
+		if (bits < 4 || bits > MAX_BITS) {
+			throw new IllegalArgumentException("Index bits must be in [4," + MAX_BITS + "].");
+		}
+		this.bits = bits;
+		this.registers = new byte[1 << bits];
+	}
+
+	/**
+	 * Adds a value to the stream.
+	 * @param hash the 64-bit hash of the value
+	 */
+	public void add(long hash) {
+		int register = (int)(hash >>> (64 - bits));
+		//a sentinel bit caps the run at the width of the remaining bits
+		int rank = Long.numberOfLeadingZeros((hash << bits) | (1L << (bits - 1))) + 1;
+		if (rank > registers[register]) {
+			registers[register] = (byte)rank;
+		}
+	}
+
+	/**
+	 * Returns the estimated number of distinct values added.
+	 * @return the estimate
+	 */
+	public long estimate() {
+		int m = registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for (byte r : registers) {
+			sum += 1.0 / (1L << r);
+			if (r == 0) {
+				zeros++;
+			}
+		}
+		double alpha = 0.7213 / (1 + 1.079 / m);
+		double estimate = alpha * m * m / sum;
+		if (estimate <= 2.5 * m && zeros > 0) {
+			estimate = m * Math.log((double)m / zeros);
+		}
+		return Math.round(estimate);
+	}
+
+	/**
+	 * Returns the relative standard error of the estimate.
+	 * @return 1.04/sqrt(number of registers)
+	 */
+	public double standardError() {
+		return 1.04 / Math.sqrt(registers.length);
+	}
+}
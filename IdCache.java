@@ -0,0 +1,66 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * An interface for caches whose engine works on the dense integer IDs of an {@code AddressTable}.
+ * Accessing a cache by ID skips hashing and comparing address strings altogether;
+ * accessing it by address interns the address into the table first.
+ * A cache built with its own table releases the IDs of the addresses it drops, so the
+ * table only holds what the cache holds; the IDs of a shared table are left to its owner.
+ * A cache writes its policy state as the addresses it holds or remembers, in policy order
+ * with their metadata, so a simulation can be checkpointed and resumed with exactly the
+ * same state however many addresses went through it.
+ */
+public interface IdCache extends Cache {
+
+	/**
+	 * This is the method that reports the table used to map IDs back to addresses.
+	 * @return the address table of this cache
+	 */
+	AddressTable addresses();
+
+	/**
+	 * This is the method that accepts the address with the given ID as the next access to cache
+	 * and performs necessary maintenance based on a cache replacement policy.
+	 * @param id the ID, in addresses(), of the address requested by the next access
+	 * @return true if the access is a cache hit, false if it is a cache miss
+	 */
+	boolean access(int id);
+
+	/**
+	 * This is the method that reports whether an address is in the cache, without counting
+	 * as an access. An evicted address the policy still remembers is not in the cache.
+	 * @param id the ID, in addresses(), of the address
+	 * @return true if the address is in the cache, false otherwise
+	 */
+	boolean contains(int id);
+
+	/**
+	 * This is the method that registers a listener to be told of every access from now on,
+	 * replacing any previous one.
+	 * @param listener the listener, or null to remove it
+	 */
+	void setListener(CacheListener listener);
+
+	/**
+	 * This is the method that writes the policy state of the cache: the addresses it holds or
+	 * remembers, in the order of its policy and with their metadata, each written as the
+	 * number ids gives its ID.
+	 * @param out where to write the state
+	 * @param ids maps each ID of addresses() to the number written for it
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	void writeState(DataOutput out, IntUnaryOperator ids) throws IOException;
+
+	/**
+	 * This is the method that restores the policy state written by writeState, of a cache
+	 * of the same policy and capacity, into this empty cache.
+	 * @param in where to read the state from
+	 * @param ids maps each number written back to an ID of addresses()
+	 * @throws IOException If an input exception occurred, or the state does not fit this cache
+	 */
+	void readState(DataInput in, IntUnaryOperator ids) throws IOException;
+
+}
@@ -0,0 +1,317 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * An opt-in instrumentation layer around a cache working on address IDs, measuring every access.
+ * The latency of each call to access is recorded into a {@code LatencyHistogram} of the
+ * calling thread, so recording never contends and memory stays fixed, and hits and misses
+ * go to striped {@code LongAdder} counters, so the report can be taken from another thread
+ * while the cache is in use. Evictions are counted from the evict events the cache reports
+ * to the listener this layer registers with it, which passes every event on to a listener
+ * registered through setListener.
+ * Nothing is measured unless a cache is wrapped, so an uninstrumented simulation pays nothing.
+ */
+public class InstrumentedCache implements IdCache {
+
+	/**
+	 * The cache measured.
+	 */
+	private IdCache cache;
+
+	/**
+	 * Number of hits.
+	 */
+	private LongAdder hits = new LongAdder();
+
+	/**
+	 * Number of misses.
+	 */
+	private LongAdder misses = new LongAdder();
+
+	/**
+	 * Number of evictions.
+	 */
+	private LongAdder evictions = new LongAdder();
+
+	/**
+	 * Listener registered through setListener, told of every event after it is counted, or null.
+	 */
+	private volatile CacheListener listener;
+
+	/**
+	 * Time the cache was wrapped, in nanoseconds.
+	 */
+	private long startNanos = System.nanoTime();
+
+	/**
+	 * Histograms of every thread that accessed the cache.
+	 */
+	private List<LatencyHistogram> histograms = new ArrayList<>();
+
+	/**
+	 * Histogram of the current thread.
+	 */
+	private ThreadLocal<LatencyHistogram> histogram = ThreadLocal.withInitial(this::register);
+
+	/**
+	 * Constructs an instrumentation layer around a cache, which must not be used directly afterwards.
+	 * @param cache the cache to measure
+	 * @throws IllegalArgumentException if cache is null
+	 */
+	public InstrumentedCache(IdCache cache){
+		if (cache == null) {
+			throw new IllegalArgumentException("Cache cannot be null.");
+		}
+		this.cache = cache;
+		cache.setListener(new Counter());
+	}
+
+	/**
+	 * The listener registered with the cache measured: it counts evictions and passes
+	 * every event on to the listener registered through setListener, if any.
+	 */
+	private class Counter implements CacheListener {
+
+		/**
+		 * Passes a hit on.
+		 * @param id the address ID of the access
+		 */
+		public void hit(int id) {
+			CacheListener next = listener;
+			if (next != null) {
+				next.hit(id);
+			}
+		}
+
+		/**
+		 * Passes a miss on.
+		 * @param id the address ID of the access
+		 */
+		public void miss(int id) {
+			CacheListener next = listener;
+			if (next != null) {
+				next.miss(id);
+			}
+		}
+
+		/**
+		 * Counts an eviction and passes it on.
+		 * @param id the address ID of the evicted item
+		 */
+		public void evict(int id) {
+			evictions.increment();
+			CacheListener next = listener;
+			if (next != null) {
+				next.evict(id);
+			}
+		}
+
+		/**
+		 * Passes an insertion on.
+		 * @param id the address ID of the inserted item
+		 */
+		public void insert(int id) {
+			CacheListener next = listener;
+			if (next != null) {
+				next.insert(id);
+			}
+		}
+	}
+
+	/**
+	 * Creates and registers the histogram of a new thread.
+	 * @return the histogram
+	 */
+	private synchronized LatencyHistogram register() {
+		LatencyHistogram h = new LatencyHistogram();
+		histograms.add(h);
+		return h;
+	}
+
+	/**
+	 * Checks if the cache is full.
+	 * @return true if the cache is full, false otherwise
+	 */
+	public boolean isFull(){
+		return cache.isFull();
+	}
+
+	/**
+	 * Reports the maximum number of items allowed in the cache.
+	 * @return the capacity of the cache
+	 */
+	public int capacity(){
+		return cache.capacity();
+	}
+
+	/**
+	 * Reports the number of items stored in the cache.
+	 * @return the number of items stored in the cache
+	 */
+	public int size(){
+		return cache.size();
+	}
+
+	/**
+	 * Reports the table used to map IDs back to addresses.
+	 * @return the address table of the wrapped cache
+	 */
+	public AddressTable addresses(){
+		return cache.addresses();
+	}
+
+	/**
+	 * Returns the item that will be evicted if the next access is a miss.
+	 * @return the item to be evicted, or null if no item will be evicted
+	 */
+	public String nextToReplace(){
+		return cache.nextToReplace();
+	}
+
+	/**
+	 * Determines whether the access to addr is a hit or miss, measuring the call.
+	 * @param addr the address to be accessed
+	 * @return true if the access is a hit, false if it's a miss
+	 */
+	public boolean access(String addr){
+		long before = System.nanoTime();
+		boolean hit = cache.access(addr);
+		long after = System.nanoTime();
+		record(hit, after - before);
+		return hit;
+	}
+
+	/**
+	 * Determines whether the access to the address with the given ID is a hit or miss, measuring the call.
+	 * @param id the ID, in addresses(), of the address requested by the next access
+	 * @return true if the access is a hit, false if it's a miss
+	 */
+	public boolean access(int id){
+		long before = System.nanoTime();
+		boolean hit = cache.access(id);
+		long after = System.nanoTime();
+		record(hit, after - before);
+		return hit;
+	}
+
+	/**
+	 * Checks, without measuring it or counting an access, whether the address with the given ID is cached.
+	 * @param id the ID, in addresses(), of the address
+	 * @return true if the address is in the cache, false otherwise
+	 */
+	public boolean contains(int id){
+		return cache.contains(id);
+	}
+
+	/**
+	 * Registers a listener to be told of every access to the wrapped cache from now on.
+	 * The events reach it through this layer, which keeps counting evictions.
+	 * @param listener the listener, or null to remove it
+	 */
+	public void setListener(CacheListener listener){
+		this.listener = listener;
+	}
+
+	/**
+	 * Writes the policy state of the cache measured. The measurements are not part of it.
+	 * @param out where to write the state
+	 * @param ids maps each ID to the number written for it
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	public void writeState(DataOutput out, IntUnaryOperator ids) throws IOException {
+		cache.writeState(out, ids);
+	}
+
+	/**
+	 * Restores the policy state written by writeState into the cache measured.
+	 * @param in where to read the state from
+	 * @param ids maps each number written back to an ID
+	 * @throws IOException If an input exception occurred, or the state does not fit the cache
+	 */
+	public void readState(DataInput in, IntUnaryOperator ids) throws IOException {
+		cache.readState(in, ids);
+	}
+
+	/**
+	 * Records one measured access.
+	 * @param hit whether it was a hit
+	 * @param nanos how long it took
+	 */
+	private void record(boolean hit, long nanos) {
+		histogram.get().record(nanos);
+		(hit ? hits : misses).increment();
+	}
+
+	/**
+	 * Returns the number of hits so far.
+	 * @return the number of hits
+	 */
+	public long hits(){
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of misses so far.
+	 * @return the number of misses
+	 */
+	public long misses(){
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the number of evictions so far, as the cache reported them, including a
+	 * candidate a policy declined to keep.
+	 * @return the number of evictions
+	 */
+	public long evictions(){
+		return evictions.sum();
+	}
+
+	/**
+	 * Returns the latencies of all accesses so far, merged over the threads. Under
+	 * concurrent accesses the copy may miss the latest ones.
+	 * @return a new histogram of the latencies, in nanoseconds
+	 */
+	public synchronized LatencyHistogram latencies(){
+		LatencyHistogram all = new LatencyHistogram();
+		for (LatencyHistogram h : histograms) {
+			all.add(h);
+		}
+		return all;
+	}
+
+	/**
+	 * Returns the throughput since the cache was wrapped.
+	 * @return accesses per second of wall-clock time
+	 */
+	public double opsPerSecond(){
+		long elapsed = Math.max(System.nanoTime() - startNanos, 1);
+		return (hits.sum() + misses.sum()) * 1e9 / elapsed;
+	}
+
+	/**
+	 * Returns a summary of the measurements so far: latency percentiles, throughput and counters.
+	 * @return the summary, two lines of text
+	 */
+	public String report(){
+		LatencyHistogram all = latencies();
+		return String.format("Latency: p50 %d ns, p99 %d ns, p999 %d ns, max %d ns\n"
+				+ "Throughput: %.0f accesses/s, hits %d, misses %d, evictions %d",
+				all.percentile(0.5), all.percentile(0.99), all.percentile(0.999), all.max(),
+				opsPerSecond(), hits(), misses(), evictions());
+	}
+
+	/**
+	 * Returns a string representing all items in the cache, as the wrapped cache prints it.
+	 * @return a string representing all items in the cache
+	 */
+	@Override
+	public String toString(){
+		return cache.toString();
+	}
+}
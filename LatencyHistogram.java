@@ -0,0 +1,129 @@
+/**
+ * A histogram of latencies in nanoseconds with log-linear buckets.
+ * Values below 32 get a bucket each; above, every power of two is split into 32 equal
+ * buckets, so any recorded value is known to within about 3% and the whole range of a
+ * long fits in under 2,000 counters, whatever the number of values recorded.
+ * A histogram is meant to be written by one thread; histograms of several threads are
+ * combined with add once they are done.
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Number of bits of a value kept below its leading bit.
+	 */
+	final static private int SUB_BITS = 5;
+
+	/**
+	 * Number of buckets per power of two.
+	 */
+	final static private int SUB_BUCKETS = 1 << SUB_BITS;
+
+	/**
+	 * Count of values in each bucket.
+	 */
+	private long[] counts = new long[(64 - SUB_BITS) * SUB_BUCKETS];
+
+	/**
+	 * Number of values recorded.
+	 */
+	private long count;
+
+	/**
+	 * Largest value recorded.
+	 */
+	private long max;
+
+	/**
+	 * Records a value.
+	 * @param nanos the value, negative values counting as 0
+	 */
+	public void record(long nanos) {
+		long value = Math.max(nanos, 0);
+		counts[bucketOf(value)]++;
+		count++;
+		max = Math.max(max, value);
+	}
+
+	/**
+	 * Adds all values of another histogram to this one.
+	 * @param other the histogram to add
+	 * @throws IllegalArgumentException if other is null
+	 */
+	public void add(LatencyHistogram other) {
+		if (other == null) {
+			throw new IllegalArgumentException("Histogram cannot be null.");
+		}
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+		count += other.count;
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * Returns the number of values recorded.
+	 * @return the number of values
+	 */
+	public long count() {
+		return count;
+	}
+
+	/**
+	 * Returns the largest value recorded.
+	 * @return the largest value, or 0 if none was recorded
+	 */
+	public long max() {
+		return max;
+	}
+
+	/**
+	 * Returns the value below which a fraction of the recorded values fall.
+	 * @param fraction the fraction, e.g. 0.99 for the 99th percentile
+	 * @return the highest value of the bucket holding that rank, or 0 if nothing was recorded
+	 * @throws IllegalArgumentException if fraction is not in [0, 1]
+	 */
+	public long percentile(double fraction) {
+		if (fraction < 0 || fraction > 1) {
+			throw new IllegalArgumentException("Fraction must be in [0, 1].");
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long)Math.ceil(fraction * count));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(highestValue(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the bucket of a value.
+	 * @param value a non-negative value
+	 * @return the index of its bucket
+	 */
+	private static int bucketOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int)value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int)((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * Returns the highest value of a bucket.
+	 * @param bucket the index of the bucket
+	 * @return the highest value mapped to it
+	 */
+	private static long highestValue(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lowest = ((long)(SUB_BUCKETS + bucket % SUB_BUCKETS)) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
@@ -1,125 +1,151 @@
-import java.util.Iterator;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.IntUnaryOperator;
 
 /**
  * Cache implementing LFU (Least Frequently Used) replacement policy.
+ * Blocks are grouped into frequency buckets kept in ascending count order,
+ * and each bucket holds its blocks from LRU to MRU. Blocks and buckets are
+ * slots of int arrays, and an index maps address IDs to block slots, so hits,
+ * misses and evictions all take constant time without allocating.
+ * A registered {@code CacheListener} is told of every access, also without allocating.
  */
-public class LfuCache implements Cache { 
+public class LfuCache implements IdCache {
 
-	//******************************************************
-	//*******     BELOW THIS LINE IS PROVIDED code   *******
-	//*******             Do NOT edit code!          *******
-	//*******		   Remember to add JavaDoc		 *******
-	//******************************************************
+	/**
+	 * Max number of items allowed in the list.
+	 */
+	private int capacity;
 
 	/**
-	 * Internal class representing a block in the cache.
-	 * Each block stores the data item and the number of times it has been accessed.
+	 * Table mapping address IDs to addresses.
 	 */
-	private class Block implements Comparable<Block> {
+	private AddressTable addresses;
 
-		/**
-		 * Data item to store in cache.
-		 */
-		private String data;
+	/**
+	 * Whether addresses is this cache's own table, in which evicted addresses are released.
+	 */
+	private boolean ownsTable;
 
-		/**
-		 * How many times this item is accessed since it is loaded in.
-		 */
-		private int count;
+	/**
+	 * Maps each cached address ID to its block slot.
+	 */
+	private SlotIndex index;
 
-		/**
-		 * Constructs a block with the given data item.
-		 * @param addr the data item to store
-		 */
-		public Block(String addr){
-			this.data = addr;
-			count = 1;
-		}
+	/**
+	 * Address ID stored in each block.
+	 */
+	private int[] keys;
 
-		/**
-		 * Retrieves the access count of this block.
-		 * @return the access count of this block
-		 */
-		public int getCount(){
-			return count;
-		}
+	/**
+	 * How many times the item of each block is accessed since it is loaded in.
+	 */
+	private int[] counts;
 
-		/**
-		 * Increments the access count of this block.
-		 */
-		public void incCount(){
-			count++;
-		}
+	/**
+	 * Bucket currently holding each block.
+	 */
+	private int[] bucketOf;
 
-		/**
-		 * Retrieves the data item stored in this block.
-		 * @return the data item stored in this block
-		 */
-		public String getData(){
-			return data;
-		}
+	/**
+	 * Block in the same bucket used less recently than each block, -1 for a bucket head.
+	 */
+	private int[] prev;
 
-		/**
-		 * Checks if this block is equal to another object.
-		 * @param other the object to compare
-		 * @return true if the objects are equal, false otherwise
-		 */
-		@Override
-		public boolean equals(Object other){
-			if (other instanceof Block){
-				if ( ((Block)other).data.equals(this.data) ){
-            		return true;
-        		}
-    		}
-   			return false;		
-		}
+	/**
+	 * Block in the same bucket used more recently than each block, -1 for a bucket tail.
+	 */
+	private int[] next;
 
-		/**
-		 * Compares this block to another block based on their access counts.
-		 * @param other the block to compare
-		 * @return a negative integer, zero, or a positive integer as this block
-		 *         is less than, equal to, or greater than the specified block
-		 */
-		public int compareTo(Block other){
-			return this.count - other.count;			
-		}
+	/**
+	 * Access count shared by every block in each bucket.
+	 */
+	private int[] bucketCount;
 
-		/**
-		 * Returns a string representation of this block including its data item and access count.
-		 * @return a string representation of this block
-		 */
-		@Override
-		public String toString(){
-			return "<"+data.toString()+","+count+">";
-		}
-	}
+	/**
+	 * Least recently used block of each bucket.
+	 */
+	private int[] bucketHead;
 
 	/**
-	 * Max number of items allowed in the list.
+	 * Most recently used block of each bucket.
 	 */
-	private int capacity;
+	private int[] bucketTail;
+
+	/**
+	 * Bucket with the next lower count than each bucket, -1 for the first bucket.
+	 */
+	private int[] bucketPrev;
+
+	/**
+	 * Bucket with the next higher count than each bucket, -1 for the last bucket.
+	 * Unused buckets are chained through this array as a free list.
+	 */
+	private int[] bucketNext;
+
+	/**
+	 * Bucket with the lowest count, the one the next victim comes from, or -1 if empty.
+	 */
+	private int first = -1;
+
+	/**
+	 * First unused bucket, or -1 if all are in use.
+	 */
+	private int freeBucket;
 
 	/**
-	 * Where the cache is stored in a list.
+	 * Number of blocks in use.
 	 */
-	private SortedList<Block> storage; //NOTE: SortedList! List of Blocks! 
+	private int size;
 
-	//******************************************************
-	//*******    	END of PROVIDED Code 	 		 *******
-	//*******    	Do NOT Change PROVIDED Code 	 *******
-	//******************************************************
+	/**
+	 * Listener told of every access, or null.
+	 */
+	private CacheListener listener;
 
 	/**
-	 * Constructs an LFU cache with the specified capacity.
+	 * Constructs an LFU cache with the specified capacity and its own address table.
+	 * The cache releases the ID of every address it evicts, so the table stays the size of
+	 * the cache however many distinct addresses go through access(String).
 	 * @param cap the capacity of the cache
 	 * @throws IllegalArgumentException if cap is not positive
 	 */
 	public LfuCache(int cap){
+		this(cap, new AddressTable());
+		this.ownsTable = true;
+	}
+
+	/**
+	 * Constructs an LFU cache with the specified capacity over a shared address table.
+	 * There are never more non-empty buckets than blocks, so cap buckets are allocated up front.
+	 * @param cap the capacity of the cache
+	 * @param addresses the table the IDs passed to access(int) come from
+	 * @throws IllegalArgumentException if cap is not positive or addresses is null
+	 */
+	public LfuCache(int cap, AddressTable addresses){
 		if (cap <= 0) {
 			throw new IllegalArgumentException("Capacity cannot be negative.");
 		}
+		if (addresses == null) {
+			throw new IllegalArgumentException("Address table cannot be null.");
+		}
 		this.capacity = cap;
-		this.storage = new SortedList<>();
+		this.addresses = addresses;
+		this.index = new SlotIndex(addresses.size());
+		this.keys = new int[cap];
+		this.counts = new int[cap];
+		this.bucketOf = new int[cap];
+		this.prev = new int[cap];
+		this.next = new int[cap];
+		this.bucketCount = new int[cap];
+		this.bucketHead = new int[cap];
+		this.bucketTail = new int[cap];
+		this.bucketPrev = new int[cap];
+		this.bucketNext = new int[cap];
+		for (int b = 0; b < cap; b++) {
+			bucketNext[b] = b + 1 < cap ? b + 1 : -1;
+		}
 	}
 
 	/**
@@ -127,7 +153,7 @@ public class LfuCache implements Cache {
 	 * @return true if the cache is full, false otherwise
 	 */
 	public boolean isFull(){
-		return storage.size() == capacity;
+		return size == capacity;
 	}
 
 	/**
@@ -143,7 +169,15 @@ public class LfuCache implements Cache {
 	 * @return the number of items stored in the cache
 	 */
 	public int size(){
-		return storage.size();
+		return size;
+	}
+
+	/**
+	 * Reports the table used to map IDs back to addresses.
+	 * @return the address table of this cache
+	 */
+	public AddressTable addresses(){
+		return addresses;
 	}
 
 	/**
@@ -151,10 +185,27 @@ public class LfuCache implements Cache {
 	 * @return the item to be evicted, or null if no item will be evicted
 	 */
 	public String nextToReplace(){
-		if (storage.getFirst() == null) {
+		if (first < 0) {
 			return null;
 		}
-		return storage.getFirst().getData();
+		return addresses.name(keys[bucketHead[first]]);
+	}
+
+	/**
+	 * Reports whether an address is in the cache, without counting as an access.
+	 * @param id the ID of the address
+	 * @return true if the address is in the cache, false otherwise
+	 */
+	public boolean contains(int id){
+		return id >= 0 && index.get(id) >= 0;
+	}
+
+	/**
+	 * Registers a listener to be told of every access from now on, replacing any previous one.
+	 * @param listener the listener, or null to remove it
+	 */
+	public void setListener(CacheListener listener){
+		this.listener = listener;
 	}
 
 	/**
@@ -165,38 +216,211 @@ public class LfuCache implements Cache {
 	 * @throws IllegalArgumentException if addr is null
 	 */
 	public boolean access(String addr){
-		if (addr == null) {
-			throw new IllegalArgumentException("Address cannot be null");
-		}
-		Block target = null;
-		for (Block block : storage) {
-			if (block.getData().equals(addr)) {
-				target = block;
-				break;
-			}
+		return access(addresses.intern(addr));
+	}
+
+	/**
+	 * Determines whether the access to an address ID is a hit or miss.
+	 * Performs necessary updating to maintain the LFU cache.
+	 * A full cache reuses the block of the evicted item for the new one.
+	 * @param id the ID of the address to be accessed
+	 * @return true if the access is a hit, false if it's a miss
+	 * @throws IllegalArgumentException if id is not an ID of addresses()
+	 */
+	public boolean access(int id){
+		if (id < 0 || id >= addresses.size()) {
+			throw new IllegalArgumentException("Unknown address ID: " + id);
 		}
-		if (target != null) {
-			target.incCount();
-			storage.remove(target);
-			storage.add(target);
+		int block = index.get(id);
+		if (block >= 0) {
+			promote(block);
+			if (listener != null) {
+				listener.hit(id);
+			}
 			return true;
+		}
+		if (listener != null) {
+			listener.miss(id);
+		}
+		if (isFull()) {
+			block = bucketHead[first];
+			unlink(block);
+			index.remove(keys[block]);
+			if (listener != null) {
+				listener.evict(keys[block]);
+			}
+			if (ownsTable) {
+				addresses.release(keys[block]);
+			}
 		} else {
-			if (isFull()) {
-				storage.removeFirst();
+			block = size++;
+		}
+		keys[block] = id;
+		counts[block] = 1;
+		index.put(id, block);
+		if (first < 0 || bucketCount[first] != 1) {
+			insertAfter(-1, 1);
+		}
+		linkLast(first, block);
+		if (listener != null) {
+			listener.insert(id);
+		}
+		return false;
+	}
+
+	/**
+	 * Increments the count of a block and moves it to the MRU end of the next bucket.
+	 * A block that is alone in its bucket keeps the bucket when no bucket exists for the new count.
+	 * @param block the block that was hit
+	 */
+	private void promote(int block) {
+		int from = bucketOf[block];
+		int count = ++counts[block];
+		int to = bucketNext[from];
+		if (to < 0 || bucketCount[to] != count) {
+			if (bucketHead[from] == bucketTail[from]) {
+				bucketCount[from] = count;
+				return;
 			}
-			storage.add(new Block(addr));
-			return false;
+			to = insertAfter(from, count);
 		}
+		unlink(block);
+		linkLast(to, block);
 	}
 
+	/**
+	 * Takes an unused bucket and links it right after the given bucket.
+	 * @param after the bucket to follow, or -1 to make the new bucket the first one
+	 * @param count the access count of the new bucket
+	 * @return the new bucket
+	 */
+	private int insertAfter(int after, int count) {
+		int bucket = freeBucket;
+		freeBucket = bucketNext[bucket];
+		bucketCount[bucket] = count;
+		bucketHead[bucket] = -1;
+		bucketTail[bucket] = -1;
+		bucketPrev[bucket] = after;
+		bucketNext[bucket] = (after < 0) ? first : bucketNext[after];
+		if (bucketNext[bucket] >= 0) {
+			bucketPrev[bucketNext[bucket]] = bucket;
+		}
+		if (after < 0) {
+			first = bucket;
+		} else {
+			bucketNext[after] = bucket;
+		}
+		return bucket;
+	}
+
+	/**
+	 * Detaches a block from its bucket and returns the bucket to the free list once it is empty.
+	 * @param block the block to detach
+	 */
+	private void unlink(int block) {
+		int bucket = bucketOf[block];
+		if (prev[block] < 0) {
+			bucketHead[bucket] = next[block];
+		} else {
+			next[prev[block]] = next[block];
+		}
+		if (next[block] < 0) {
+			bucketTail[bucket] = prev[block];
+		} else {
+			prev[next[block]] = prev[block];
+		}
+		if (bucketHead[bucket] < 0) {
+			if (bucketPrev[bucket] < 0) {
+				first = bucketNext[bucket];
+			} else {
+				bucketNext[bucketPrev[bucket]] = bucketNext[bucket];
+			}
+			if (bucketNext[bucket] >= 0) {
+				bucketPrev[bucketNext[bucket]] = bucketPrev[bucket];
+			}
+			bucketNext[bucket] = freeBucket;
+			freeBucket = bucket;
+		}
+	}
+
+	/**
+	 * Appends a block at the MRU end of a bucket.
+	 * @param bucket the bucket to append to
+	 * @param block the block to append
+	 */
+	private void linkLast(int bucket, int block) {
+		bucketOf[block] = bucket;
+		prev[block] = bucketTail[bucket];
+		next[block] = -1;
+		if (bucketTail[bucket] < 0) {
+			bucketHead[bucket] = block;
+		} else {
+			next[bucketTail[bucket]] = block;
+		}
+		bucketTail[bucket] = block;
+	}
+
+	/**
+	 * Writes the cached address IDs with their counts, from the LFU end to the MFU end.
+	 * @param out where to write the state
+	 * @param ids maps each ID to the number written for it
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	public void writeState(DataOutput out, IntUnaryOperator ids) throws IOException {
+		out.writeInt(size);
+		for (int bucket = first; bucket >= 0; bucket = bucketNext[bucket]) {
+			for (int block = bucketHead[bucket]; block >= 0; block = next[block]) {
+				out.writeInt(ids.applyAsInt(keys[block]));
+				out.writeInt(counts[block]);
+			}
+		}
+	}
+
+	/**
+	 * Restores the cached address IDs and counts written by writeState into this empty cache.
+	 * @param in where to read the state from
+	 * @param ids maps each number written back to an ID
+	 * @throws IOException If an input exception occurred, or the state holds more items than fit
+	 * or counts out of order
+	 */
+	public void readState(DataInput in, IntUnaryOperator ids) throws IOException {
+		int count = in.readInt();
+		if (count < 0 || count > capacity) {
+			throw new IOException("Cache state does not fit the capacity.");
+		}
+		int last = -1;
+		for (int block = 0; block < count; block++) {
+			keys[block] = ids.applyAsInt(in.readInt());
+			counts[block] = in.readInt();
+			if (counts[block] < 1 || (last >= 0 && counts[block] < bucketCount[last])) {
+				throw new IOException("Cache state has counts out of order.");
+			}
+			index.put(keys[block], block);
+			if (last < 0 || bucketCount[last] != counts[block]) {
+				last = insertAfter(last, counts[block]);
+			}
+			linkLast(last, block);
+		}
+		size = count;
+	}
 
 	/**
 	 * Returns a string representing all items in the cache, following the order from LFU to MFU.
 	 * If there is a tie, items should be included from LRU to MRU.
+	 * Each item is shown as its address and access count, e.g. &lt;A,2&gt;.
 	 * @return a string representing all items in the cache
 	 */
 	@Override
 	public String toString(){
-		return storage.listToString();
+		StringBuilder sb = new StringBuilder();
+		for (int bucket = first; bucket >= 0; bucket = bucketNext[bucket]) {
+			for (int block = bucketHead[bucket]; block >= 0; block = next[block]) {
+				if (sb.length() > 0) {
+					sb.append(" ");
+				}
+				sb.append("<"+addresses.name(keys[block])+","+counts[block]+">");
+			}
+		}
+		return sb.toString();
 	}
-}
\ No newline at end of file
+}
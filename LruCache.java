@@ -1,10 +1,16 @@
-// TO DO: add your implementation and JavaDocs.
-import java.util.Iterator;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.IntUnaryOperator;
 
 /**
  * Cache implementing LRU (Least Recently Used) replacement policy.
+ * Items are kept in a doubly linked recency list (LRU at the head, MRU at the tail)
+ * laid out over int arrays of slots, with an index from address ID to slot,
+ * so hits, promotions and evictions all take constant time.
+ * A registered {@code CacheListener} is told of every access.
  */
-public class LruCache implements Cache {
+public class LruCache implements IdCache {
 
 	/**
 	 * The max number of items in the cache.
@@ -12,21 +18,86 @@ public class LruCache implements Cache {
 	private int capacity;
 
 	/**
-	 * Where the LRU cache is stored.
+	 * Table mapping address IDs to addresses.
 	 */
-	private BasicList<String> storage; //each address is a string
+	private AddressTable addresses;
 
 	/**
-	 * Constructs an LRU cache with the specified capacity.
+	 * Whether addresses is this cache's own table, in which evicted addresses are released.
+	 */
+	private boolean ownsTable;
+
+	/**
+	 * Maps each cached address ID to its slot.
+	 */
+	private SlotIndex index;
+
+	/**
+	 * Address ID stored in each slot.
+	 */
+	private int[] keys;
+
+	/**
+	 * Slot used less recently than each slot, -1 for the head.
+	 */
+	private int[] prev;
+
+	/**
+	 * Slot used more recently than each slot, -1 for the tail.
+	 */
+	private int[] next;
+
+	/**
+	 * Least recently used slot, the next one to be evicted, or -1 if empty.
+	 */
+	private int head = -1;
+
+	/**
+	 * Most recently used slot, or -1 if empty.
+	 */
+	private int tail = -1;
+
+	/**
+	 * Number of slots in use.
+	 */
+	private int size;
+
+	/**
+	 * Listener told of every access, or null.
+	 */
+	private CacheListener listener;
+
+	/**
+	 * Constructs an LRU cache with the specified capacity and its own address table.
+	 * The cache releases the ID of every address it evicts, so the table stays the size of
+	 * the cache however many distinct addresses go through access(String).
 	 * @param cap the capacity of the cache
 	 * @throws IllegalArgumentException if cap is not positive
 	 */
 	public LruCache(int cap){
+		this(cap, new AddressTable());
+		this.ownsTable = true;
+	}
+
+	/**
+	 * Constructs an LRU cache with the specified capacity over a shared address table.
+	 * @param cap the capacity of the cache
+	 * @param addresses the table the IDs passed to access(int) come from
+	 * @throws IllegalArgumentException if cap is not positive or addresses is null
+	 */
+	public LruCache(int cap, AddressTable addresses){
 		if (cap <= 0) {
 			throw new IllegalArgumentException("Capacity cannot be negative.");
 		}
+		if (addresses == null) {
+			throw new IllegalArgumentException("Address table cannot be null.");
+		}
 		this.capacity = cap;
-		this.storage = new BasicList<>();
+		this.addresses = addresses;
+		this.index = new SlotIndex(addresses.size());
+		this.keys = new int[cap];
+		this.prev = new int[cap];
+		this.next = new int[cap];
 	}
 
 	/**
@@ -34,7 +105,7 @@ public class LruCache implements Cache {
 	 * @return true if the cache is full, false otherwise
 	 */
 	public boolean isFull(){
-		return storage.size() == capacity;
+		return size == capacity;
 	}
 
 
@@ -51,7 +122,15 @@ public class LruCache implements Cache {
 	 * @return the number of items stored in the cache
 	 */
 	public int size(){
-		return storage.size();
+		return size;
+	}
+
+	/**
+	 * Reports the table used to map IDs back to addresses.
+	 * @return the address table of this cache
+	 */
+	public AddressTable addresses(){
+		return addresses;
 	}
 
 	/**
@@ -59,11 +138,27 @@ public class LruCache implements Cache {
 	 * @return the item to be evicted, or null if no item will be evicted
 	 */
 	public String nextToReplace(){
-		if (storage.size() == 0) {
+		if (head < 0) {
 			return null;
-		} else {
-			return storage.getLast();
 		}
+		return addresses.name(keys[head]);
+	}
+
+	/**
+	 * Reports whether an address is in the cache, without counting as an access.
+	 * @param id the ID of the address
+	 * @return true if the address is in the cache, false otherwise
+	 */
+	public boolean contains(int id){
+		return id >= 0 && index.get(id) >= 0;
+	}
+
+	/**
+	 * Registers a listener to be told of every access from now on, replacing any previous one.
+	 * @param listener the listener, or null to remove it
+	 */
+	public void setListener(CacheListener listener){
+		this.listener = listener;
 	}
 
 	/**
@@ -74,26 +169,119 @@ public class LruCache implements Cache {
 	 * @throws IllegalArgumentException if addr is null
 	 */
 	public boolean access(String addr){
-		if (addr == null) {
-			throw new IllegalArgumentException("Address cannot be null");
+		return access(addresses.intern(addr));
+	}
+
+	/**
+	 * Determines whether the access to an address ID is a hit or miss.
+	 * Performs necessary updating to maintain the LRU cache.
+	 * A full cache reuses the slot of the evicted item for the new one.
+	 * @param id the ID of the address to be accessed
+	 * @return true if the access is a hit, false if it's a miss
+	 * @throws IllegalArgumentException if id is not an ID of addresses()
+	 */
+	public boolean access(int id){
+		if (id < 0 || id >= addresses.size()) {
+			throw new IllegalArgumentException("Unknown address ID: " + id);
 		}
-		boolean hit = false;
-		for (String item : storage) {
-			if (item.equals(addr)) {
-				hit = true;
-				break;
+		int slot = index.get(id);
+		if (slot >= 0) {
+			if (slot != tail) {
+				unlink(slot);
+				linkLast(slot);
 			}
+			if (listener != null) {
+				listener.hit(id);
+			}
+			return true;
 		}
-		if (hit) {
-			storage.remove(addr);
-			storage.addLast(addr);
-		} else {
-			if (isFull()) {
-				storage.removeFirst();
+		if (listener != null) {
+			listener.miss(id);
+		}
+		if (isFull()) {
+			slot = head;
+			unlink(slot);
+			index.remove(keys[slot]);
+			if (listener != null) {
+				listener.evict(keys[slot]);
+			}
+			if (ownsTable) {
+				addresses.release(keys[slot]);
 			}
-			storage.addLast(addr);
+		} else {
+			slot = size++;
+		}
+		keys[slot] = id;
+		index.put(id, slot);
+		linkLast(slot);
+		if (listener != null) {
+			listener.insert(id);
+		}
+		return false;
+	}
+
+	/**
+	 * Detaches a slot from the recency list.
+	 * @param slot the slot to detach
+	 */
+	private void unlink(int slot) {
+		if (prev[slot] < 0) {
+			head = next[slot];
+		} else {
+			next[prev[slot]] = next[slot];
+		}
+		if (next[slot] < 0) {
+			tail = prev[slot];
+		} else {
+			prev[next[slot]] = prev[slot];
 		}
-		return hit;
+	}
+
+	/**
+	 * Appends a slot at the MRU end of the recency list.
+	 * @param slot the slot to append
+	 */
+	private void linkLast(int slot) {
+		prev[slot] = tail;
+		next[slot] = -1;
+		if (tail < 0) {
+			head = slot;
+		} else {
+			next[tail] = slot;
+		}
+		tail = slot;
+	}
+
+	/**
+	 * Writes the cached address IDs from LRU to MRU.
+	 * @param out where to write the state
+	 * @param ids maps each ID to the number written for it
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	public void writeState(DataOutput out, IntUnaryOperator ids) throws IOException {
+		out.writeInt(size);
+		for (int slot = head; slot >= 0; slot = next[slot]) {
+			out.writeInt(ids.applyAsInt(keys[slot]));
+		}
+	}
+
+	/**
+	 * Restores the cached address IDs written by writeState into this empty cache.
+	 * @param in where to read the state from
+	 * @param ids maps each number written back to an ID
+	 * @throws IOException If an input exception occurred, or the state holds more items than fit
+	 */
+	public void readState(DataInput in, IntUnaryOperator ids) throws IOException {
+		int count = in.readInt();
+		if (count < 0 || count > capacity) {
+			throw new IOException("Cache state does not fit the capacity.");
+		}
+		for (int slot = 0; slot < count; slot++) {
+			keys[slot] = ids.applyAsInt(in.readInt());
+			index.put(keys[slot], slot);
+			linkLast(slot);
+		}
+		size = count;
 	}
 
 	/**
@@ -102,6 +290,13 @@ public class LruCache implements Cache {
 	 */
 	@Override
 	public String toString(){
-		return storage.listToString();
+		StringBuilder sb = new StringBuilder();
+		for (int slot = head; slot >= 0; slot = next[slot]) {
+			if (slot != head) {
+				sb.append(" ");
+			}
+			sb.append(addresses.name(keys[slot]));
+		}
+		return sb.toString();
 	}
 }
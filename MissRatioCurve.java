@@ -0,0 +1,258 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An exact LRU miss-ratio curve computed in a single pass over a trace.
+ * The LRU stack distance of each access (1 for the most recently used address) is
+ * the number of distinct addresses accessed since the previous access to the same address,
+ * plus one. An LRU cache of size c hits exactly the accesses with distance at most c, so a
+ * histogram of distances gives the hit rate of every cache size at once.
+ * Distances are counted with a Fenwick tree over access times that marks the latest access
+ * of each address; the times are renumbered whenever the tree fills up, so memory stays
+ * proportional to the number of distinct addresses and each access costs O(log M).
+ */
+public class MissRatioCurve {
+
+	/**
+	 * Largest cache size the curve is reported for.
+	 */
+	private int maxSize;
+
+	/**
+	 * Number of accesses at each stack distance from 1 to maxSize, at the same index.
+	 */
+	private long[] distances;
+
+	/**
+	 * Number of accesses so far.
+	 */
+	private long accesses;
+
+	/**
+	 * Number of accesses to addresses never seen before.
+	 */
+	private long coldMisses;
+
+	/**
+	 * Time of the latest access of each address ID, or 0 if never accessed.
+	 */
+	private int[] lastTime;
+
+	/**
+	 * Address ID whose latest access happened at each time, or -1 if the time is stale.
+	 */
+	private int[] idAt;
+
+	/**
+	 * Fenwick tree over times 1..tree.length-1 counting latest accesses.
+	 */
+	private int[] tree;
+
+	/**
+	 * Time given to the next access.
+	 */
+	private int clock = 1;
+
+	/**
+	 * Number of distinct addresses seen so far, i.e. number of marked times.
+	 */
+	private int distinct;
+
+	/**
+	 * Constructs an empty curve for cache sizes 1 to maxSize.
+	 * @param maxSize the largest cache size to report
+	 * @throws IllegalArgumentException if maxSize is not positive
+	 */
+	public MissRatioCurve(int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Max size must be positive.");
+		}
+		this.maxSize = maxSize;
+		this.distances = new long[maxSize + 1];
+		this.lastTime = new int[1024];
+		this.idAt = new int[1024];
+		this.tree = new int[1024];
+	}
+
+	/**
+	 * Computes the curve of a trace file.
+	 * @param filename the name (path to) an input file with a sequence of accesses
+	 * @param maxSize the largest cache size to report
+	 * @return the curve of the trace
+	 * @throws IOException If an input exception occurred with input filename
+	 */
+	public static MissRatioCurve compute(String filename, int maxSize) throws IOException {
+		MissRatioCurve curve = new MissRatioCurve(maxSize);
+		try (TraceReader reader = new TraceReader(filename, new AddressTable())) {
+			for (int id = reader.next(); id >= 0; id = reader.next()) {
+				curve.access(id);
+			}
+		}
+		return curve;
+	}
+
+	/**
+	 * Adds the next access of the trace to the curve.
+	 * @param id the address ID of the access
+	 * @return the LRU stack distance of the access, or 0 if its address was never accessed before
+	 * @throws IllegalArgumentException if id is negative
+	 */
+	public long access(int id) {
+		if (id < 0) {
+			throw new IllegalArgumentException("Unknown address ID: " + id);
+		}
+		if (id >= lastTime.length) {
+			lastTime = Arrays.copyOf(lastTime, Math.max(id + 1, lastTime.length * 2));
+		}
+		if (clock == tree.length) {
+			renumber();
+		}
+		accesses++;
+		int last = lastTime[id];
+		long distance = 0;
+		if (last == 0) {
+			coldMisses++;
+			distinct++;
+		} else {
+			distance = prefix(clock - 1) - prefix(last) + 1;
+			if (distance <= maxSize) {
+				distances[(int)distance]++;
+			}
+			add(last, -1);
+			idAt[last] = -1;
+		}
+		add(clock, 1);
+		idAt[clock] = id;
+		lastTime[id] = clock++;
+		return distance;
+	}
+
+	/**
+	 * Renumbers the latest accesses to times 1..distinct, keeping their order,
+	 * and grows the tree if they take more than half of it.
+	 */
+	private void renumber() {
+		int length = tree.length;
+		if (distinct + 1 > length / 2) {
+			length *= 2;
+		}
+		int[] newIdAt = new int[length];
+		int[] newTree = new int[length];
+		int time = 1;
+		for (int t = 1; t < clock; t++) {
+			if (idAt[t] >= 0) {
+				newIdAt[time] = idAt[t];
+				lastTime[idAt[t]] = time;
+				newTree[time] = 1;
+				time++;
+			}
+		}
+		Arrays.fill(newIdAt, time, length, -1);
+		//linear-time Fenwick construction from the marks
+		for (int i = 1; i < length; i++) {
+			int parent = i + (i & -i);
+			if (parent < length) {
+				newTree[parent] += newTree[i];
+			}
+		}
+		idAt = newIdAt;
+		tree = newTree;
+		clock = time;
+	}
+
+	/**
+	 * Adds a delta at a time of the Fenwick tree.
+	 * @param time the time to change
+	 * @param delta the amount to add
+	 */
+	private void add(int time, int delta) {
+		for (int i = time; i < tree.length; i += i & -i) {
+			tree[i] += delta;
+		}
+	}
+
+	/**
+	 * Counts the marks at times 1..time of the Fenwick tree.
+	 * @param time the last time to include
+	 * @return the number of latest accesses at or before time
+	 */
+	private int prefix(int time) {
+		int sum = 0;
+		for (int i = time; i > 0; i -= i & -i) {
+			sum += tree[i];
+		}
+		return sum;
+	}
+
+	/**
+	 * Returns the largest cache size the curve is reported for.
+	 * @return the largest cache size
+	 */
+	public int maxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Returns the number of accesses added to the curve.
+	 * @return the number of accesses
+	 */
+	public long accesses() {
+		return accesses;
+	}
+
+	/**
+	 * Returns the number of accesses to addresses never seen before, which miss at every size.
+	 * @return the number of cold misses
+	 */
+	public long coldMisses() {
+		return coldMisses;
+	}
+
+	/**
+	 * Returns the number of distinct addresses accessed.
+	 * @return the number of distinct addresses
+	 */
+	public int distinct() {
+		return distinct;
+	}
+
+	/**
+	 * Returns the hit count of an LRU cache of every size from 1 to maxSize.
+	 * @return array whose element at index c is the number of hits of a cache of size c
+	 */
+	public long[] hits() {
+		long[] hits = new long[maxSize + 1];
+		for (int c = 1; c <= maxSize; c++) {
+			hits[c] = hits[c - 1] + distances[c];
+		}
+		return hits;
+	}
+
+	/**
+	 * Returns the number of hits an LRU cache of the given size would have.
+	 * @param size the cache size
+	 * @return the number of hits
+	 * @throws IllegalArgumentException if size is not in [1, maxSize]
+	 */
+	public long hits(int size) {
+		if (size < 1 || size > maxSize) {
+			throw new IllegalArgumentException("Size must be in [1," + maxSize + "].");
+		}
+		return hits()[size];
+	}
+
+	/**
+	 * Returns the curve as CSV with columns size, hits, hit_rate and miss_ratio, one row per size.
+	 * @return the curve as CSV text
+	 */
+	public String toCsv() {
+		StringBuilder sb = new StringBuilder("size,hits,hit_rate,miss_ratio\n");
+		long[] hits = hits();
+		for (int c = 1; c <= maxSize; c++) {
+			double rate = accesses == 0 ? 0 : (double)hits[c] / accesses;
+			sb.append(c).append(',').append(hits[c]).append(',');
+			sb.append(String.format("%.6f,%.6f", rate, 1 - rate)).append('\n');
+		}
+		return sb.toString();
+	}
+}
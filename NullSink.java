@@ -0,0 +1,21 @@
+/**
+ * An access sink that discards every event, used when only the final statistics are wanted.
+ */
+public class NullSink implements AccessSink {
+
+	/**
+	 * Ignores the access.
+	 * @param index position of the access in the trace
+	 * @param id the address ID of the access
+	 * @param hit whether the access was a cache hit
+	 * @param cache the cache after the access
+	 */
+	public void access(long index, int id, boolean hit, IdCache cache) {
+	}
+
+	/**
+	 * Does nothing, as nothing is buffered.
+	 */
+	public void flush() {
+	}
+}
@@ -0,0 +1,311 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Cache implementing Belady's OPT (MIN) replacement policy, the offline optimum.
+ * It knows the whole trace up front, and on a miss evicts the resident item whose next
+ * access is furthest in the future, or that is never accessed again. Next uses come
+ * from the trace's precomputed next-use array, and resident items are kept in a binary
+ * max-heap on their next use, with an index from address ID to heap position, so every
+ * access takes O(log C) time.
+ * Accesses must be made in trace order, since each one is looked up by its position.
+ * A registered {@code CacheListener} is told of every access.
+ */
+public class OptCache implements IdCache {
+
+	/**
+	 * The max number of items in the cache.
+	 */
+	private int capacity;
+
+	/**
+	 * The trace the accesses follow.
+	 */
+	private Trace trace;
+
+	/**
+	 * Position of the next access to the same address after each access of the trace.
+	 */
+	private int[] nextUses;
+
+	/**
+	 * Position in the trace of the next access.
+	 */
+	private int cursor;
+
+	/**
+	 * Number of items stored in the heap.
+	 */
+	private int size;
+
+	/**
+	 * Address ID of each heap position.
+	 */
+	private int[] keys;
+
+	/**
+	 * Next use of the item at each heap position; every parent's is at least its children's.
+	 */
+	private int[] due;
+
+	/**
+	 * Maps each cached address ID to its heap position.
+	 */
+	private SlotIndex index;
+
+	/**
+	 * Listener told of every access, or null.
+	 */
+	private CacheListener listener;
+
+	/**
+	 * Constructs an OPT cache with the specified capacity for a trace.
+	 * @param cap the capacity of the cache
+	 * @param trace the trace that will be replayed, in order, through access
+	 * @throws IllegalArgumentException if cap is not positive or trace is null
+	 */
+	public OptCache(int cap, Trace trace){
+		if (cap <= 0) {
+			throw new IllegalArgumentException("Capacity cannot be negative.");
+		}
+		if (trace == null) {
+			throw new IllegalArgumentException("Trace cannot be null.");
+		}
+		this.capacity = cap;
+		this.trace = trace;
+		this.nextUses = trace.nextUses();
+		this.keys = new int[cap];
+		this.due = new int[cap];
+		this.index = new SlotIndex(trace.addresses().size());
+	}
+
+	/**
+	 * Checks if the cache is full.
+	 * @return true if the cache is full, false otherwise
+	 */
+	public boolean isFull(){
+		return size == capacity;
+	}
+
+	/**
+	 * Reports the maximum number of items allowed in the cache.
+	 * @return the capacity of the cache
+	 */
+	public int capacity(){
+		return capacity;
+	}
+
+	/**
+	 * Reports the number of items stored in the cache.
+	 * @return the number of items stored in the cache
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Reports the table used to map IDs back to addresses.
+	 * @return the address table of the trace
+	 */
+	public AddressTable addresses(){
+		return trace.addresses();
+	}
+
+	/**
+	 * Returns the item that will be evicted if the next access is a miss.
+	 * @return the item to be evicted, or null if no item will be evicted
+	 */
+	public String nextToReplace(){
+		if (!isFull()) {
+			return null;
+		}
+		return trace.addresses().name(keys[0]);
+	}
+
+	/**
+	 * Reports whether an address is in the cache, without counting as an access.
+	 * @param id the ID of the address
+	 * @return true if the address is in the cache, false otherwise
+	 */
+	public boolean contains(int id){
+		return id >= 0 && index.get(id) >= 0;
+	}
+
+	/**
+	 * Registers a listener to be told of every access from now on, replacing any previous one.
+	 * @param listener the listener, or null to remove it
+	 */
+	public void setListener(CacheListener listener){
+		this.listener = listener;
+	}
+
+	/**
+	 * Determines whether the access to addr, the next access of the trace, is a hit or miss.
+	 * @param addr the address to be accessed
+	 * @return true if the access is a hit, false if it's a miss
+	 * @throws IllegalArgumentException if addr is not the next address of the trace
+	 */
+	public boolean access(String addr){
+		//never intern: the trace's table may be shared with other caches
+		return access(trace.addresses().find(addr));
+	}
+
+	/**
+	 * Determines whether the access to an address ID, the next access of the trace, is a hit or miss.
+	 * @param id the ID of the address to be accessed
+	 * @return true if the access is a hit, false if it's a miss
+	 * @throws IllegalArgumentException if id is not the next address ID of the trace
+	 */
+	public boolean access(int id){
+		if (cursor >= trace.length() || trace.get(cursor) != id) {
+			throw new IllegalArgumentException("Access does not follow the trace: " + id);
+		}
+		int next = nextUses[cursor++];
+		int pos = index.get(id);
+		if (pos >= 0) {
+			//the next use only moves later, so the item can only rise
+			due[pos] = next;
+			siftUp(pos);
+			if (listener != null) {
+				listener.hit(id);
+			}
+			return true;
+		}
+		if (listener != null) {
+			listener.miss(id);
+		}
+		if (isFull()) {
+			if (listener != null) {
+				listener.evict(keys[0]);
+			}
+			index.remove(keys[0]);
+			set(0, id, next);
+			siftDown(0);
+		} else {
+			set(size, id, next);
+			siftUp(size++);
+		}
+		if (listener != null) {
+			listener.insert(id);
+		}
+		return false;
+	}
+
+	/**
+	 * Moves an item towards the root while its next use is later than its parent's.
+	 * @param pos the heap position of the item
+	 */
+	private void siftUp(int pos) {
+		int id = keys[pos];
+		int next = due[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if (due[parent] >= next) {
+				break;
+			}
+			set(pos, keys[parent], due[parent]);
+			pos = parent;
+		}
+		set(pos, id, next);
+	}
+
+	/**
+	 * Moves an item towards the leaves while a child's next use is later than its own.
+	 * @param pos the heap position of the item
+	 */
+	private void siftDown(int pos) {
+		int id = keys[pos];
+		int next = due[pos];
+		while (true) {
+			int child = 2 * pos + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && due[child + 1] > due[child]) {
+				child++;
+			}
+			if (due[child] <= next) {
+				break;
+			}
+			set(pos, keys[child], due[child]);
+			pos = child;
+		}
+		set(pos, id, next);
+	}
+
+	/**
+	 * Stores an item at a heap position and records the position in the index.
+	 * @param pos the heap position
+	 * @param id the address ID of the item
+	 * @param next the next use of the item
+	 */
+	private void set(int pos, int id, int next) {
+		keys[pos] = id;
+		due[pos] = next;
+		index.put(id, pos);
+	}
+
+	/**
+	 * Writes the position reached in the trace, then the heap of cached address IDs with
+	 * the positions of their next uses, in heap order.
+	 * @param out where to write the state
+	 * @param ids maps each ID to the number written for it
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	public void writeState(DataOutput out, IntUnaryOperator ids) throws IOException {
+		out.writeInt(cursor);
+		out.writeInt(size);
+		for (int pos = 0; pos < size; pos++) {
+			out.writeInt(ids.applyAsInt(keys[pos]));
+			out.writeInt(due[pos]);
+		}
+	}
+
+	/**
+	 * Restores the heap written by writeState, from a cache over the same trace, into this empty cache.
+	 * @param in where to read the state from
+	 * @param ids maps each number written back to an ID of the trace
+	 * @throws IOException If an input exception occurred, or the state holds more items than fit
+	 * or lies beyond the trace
+	 */
+	public void readState(DataInput in, IntUnaryOperator ids) throws IOException {
+		int position = in.readInt();
+		int count = in.readInt();
+		if (position < 0 || position > trace.length()) {
+			throw new IOException("Cache state lies beyond the trace.");
+		}
+		if (count < 0 || count > capacity) {
+			throw new IOException("Cache state does not fit the capacity.");
+		}
+		for (int pos = 0; pos < count; pos++) {
+			set(pos, ids.applyAsInt(in.readInt()), in.readInt());
+		}
+		cursor = position;
+		size = count;
+	}
+
+	/**
+	 * Returns a string representing all items in the cache, following the order from the
+	 * furthest next use (evicted first) to the soonest.
+	 * @return a string representing all items in the cache
+	 */
+	@Override
+	public String toString(){
+		long[] order = new long[size];
+		for (int pos = 0; pos < size; pos++) {
+			order[pos] = ((long)due[pos] << 32) | keys[pos];
+		}
+		Arrays.sort(order);
+		StringBuilder sb = new StringBuilder();
+		for (int i = size - 1; i >= 0; i--) {
+			if (i < size - 1) {
+				sb.append(" ");
+			}
+			sb.append(trace.addresses().name((int)order[i]));
+		}
+		return sb.toString();
+	}
+}
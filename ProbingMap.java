@@ -0,0 +1,398 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A hash map using open addressing with linear probing over flat key and value arrays.
+ * It offers the same put/get/delete/size operations as {@code BasicMap}, but the
+ * table doubles whenever the number of mappings passes the load factor, so
+ * lookups stay constant time on average however many keys are stored.
+ * Deletions shift later entries of the probe run back instead of leaving tombstones.
+ * Each mapping also keeps the rank at which its key was first put, so the keys can be
+ * listed in insertion order and toString prints the map exactly as {@code BasicMap} does.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ */
+public class ProbingMap<K, V> {
+
+	/**
+	 * Number of slots used when no expected size is given.
+	 */
+	final static private int DEFAULT_CAPACITY = 16;
+
+	/**
+	 * Fraction of the slots that may be occupied before the table grows.
+	 */
+	final static private double DEFAULT_LOAD_FACTOR = 0.75;
+
+	/**
+	 * Number of buckets of {@code BasicMap}, whose printed order toString follows.
+	 */
+	final static private int BASIC_BUCKETS = 7;
+
+	/**
+	 * Keys of the table, null for an empty slot.
+	 */
+	private Object[] keys;
+
+	/**
+	 * Values of the table, stored at the same position as their keys.
+	 */
+	private Object[] values;
+
+	/**
+	 * Insertion rank of the mapping in each slot, stored at the same position as its key.
+	 */
+	private int[] ranks;
+
+	/**
+	 * Rank given to the next new key.
+	 */
+	private int nextRank;
+
+	/**
+	 * Tracks how many elements in the map.
+	 */
+	private int size;
+
+	/**
+	 * Fraction of the slots that may be occupied before the table grows.
+	 */
+	private double loadFactor;
+
+	/**
+	 * Number of mappings at which the table is doubled.
+	 */
+	private int threshold;
+
+	/**
+	 * Number of low bits of the mixed hash used as the home slot, i.e. log2 of the table length.
+	 */
+	private int bits;
+
+	/**
+	 * Constructs an empty map with the default capacity and load factor.
+	 */
+	public ProbingMap() {
+		this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+	}
+
+	/**
+	 * Constructs an empty map sized to hold the expected number of mappings without growing.
+	 * @param expected the number of mappings expected to be stored
+	 * @throws IllegalArgumentException if expected is negative
+	 */
+	public ProbingMap(int expected) {
+		this(expected, DEFAULT_LOAD_FACTOR);
+	}
+
+	/**
+	 * Constructs an empty map with the given expected size and load factor.
+	 * @param expected the number of mappings expected to be stored
+	 * @param loadFactor fraction of slots that may be occupied before the table doubles, in (0,1)
+	 * @throws IllegalArgumentException if expected is negative or loadFactor is not in (0,1)
+	 */
+	public ProbingMap(int expected, double loadFactor) {
+		if (expected < 0) {
+			throw new IllegalArgumentException("Expected size cannot be negative.");
+		}
+		if (!(loadFactor > 0 && loadFactor < 1)) {
+			throw new IllegalArgumentException("Load factor must be between 0 and 1.");
+		}
+		this.loadFactor = loadFactor;
+		int length = 2;
+		while (length < 1 << 30 && length * loadFactor < expected + 1) {
+			length <<= 1;
+		}
+		allocate(length);
+	}
+
+	/**
+	 * Returns the number of key-value mappings in this map.
+	 * @return the number of key-value mappings in this map
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the current capacity of the hash map.
+	 * @return the number of slots in the hash map
+	 */
+	private int capacity() {
+		return keys.length;
+	}
+
+	/**
+	 * Creates empty key and value arrays of the given power-of-two length.
+	 * @param length the new number of slots
+	 */
+	private void allocate(int length) {
+		keys = new Object[length];
+		values = new Object[length];
+		ranks = new int[length];
+		bits = Integer.numberOfTrailingZeros(length);
+		threshold = Math.min((int)(length * loadFactor), length - 1);
+	}
+
+	/**
+	 * Returns the home slot of a key.
+	 * The hash code is scrambled with a multiplicative constant and its high bits are used,
+	 * so every hash code, Integer.MIN_VALUE included, lands on a valid slot.
+	 * @param key the key whose slot to compute
+	 * @return the index of the first slot probed for the key
+	 */
+	private int home(Object key) {
+		return (key.hashCode() * 0x9E3779B9) >>> (32 - bits);
+	}
+
+	/**
+	 * Searches for the slot holding the given key.
+	 * @param key the key to search for
+	 * @return the slot of the key, or -1 if not found
+	 */
+	private int findSlot(Object key) {
+		int mask = capacity() - 1;
+		for (int i = home(key); keys[i] != null; i = (i + 1) & mask) {
+			if (keys[i].equals(key)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Doubles the number of slots and re-inserts every mapping.
+	 */
+	private void grow() {
+		Object[] oldKeys = keys;
+		Object[] oldValues = values;
+		int[] oldRanks = ranks;
+		allocate(oldKeys.length * 2);
+		int mask = capacity() - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldKeys[j] != null) {
+				int i = home(oldKeys[j]);
+				while (keys[i] != null) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+				ranks[i] = oldRanks[j];
+			}
+		}
+	}
+
+	/**
+	 * Associates the specified value with the specified key in this map.
+	 * @param key the key with which the specified value is to be associated
+	 * @param value the value to be associated with the specified key
+	 * @throws IllegalArgumentException if the key or value is null
+	 */
+	public void put(K key, V value) {
+		if (key == null || value == null) {
+			throw new IllegalArgumentException("Key or value cannot be null");
+		}
+		int mask = capacity() - 1;
+		int i = home(key);
+		while (keys[i] != null) {
+			if (keys[i].equals(key)) {
+				values[i] = value;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		ranks[i] = nextRank++;
+		size++;
+		if (nextRank == Integer.MAX_VALUE) {
+			renumber();
+		}
+		if (size > threshold && capacity() < 1 << 30) {
+			grow();
+		}
+	}
+
+	/**
+	 * Returns the value to which the specified key is mapped, or null if this map contains no mapping for the key.
+	 * @param key the key whose associated value is to be returned
+	 * @return the value to which the specified key is mapped, or null if this map contains no mapping for the key
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(K key) {
+		if (key == null) {
+			return null;
+		}
+		int i = findSlot(key);
+		return i < 0 ? null : (V)values[i];
+	}
+
+	/**
+	 * Removes the mapping for a key from this map if it is present.
+	 * Entries further along the probe run are shifted back so no search is cut short.
+	 * @param key the key whose mapping is to be removed from the map
+	 * @return the previous value associated with the key, or null if there was no mapping for the key
+	 */
+	@SuppressWarnings("unchecked")
+	public V delete(K key) {
+		if (key == null) {
+			return null;
+		}
+		int hole = findSlot(key);
+		if (hole < 0) {
+			return null;
+		}
+		V removed = (V)values[hole];
+		int mask = capacity() - 1;
+		for (int j = (hole + 1) & mask; keys[j] != null; j = (j + 1) & mask) {
+			int k = home(keys[j]);
+			// keep the entry if its home lies cyclically in (hole, j]
+			boolean stays = (hole <= j) ? (hole < k && k <= j) : (hole < k || k <= j);
+			if (!stays) {
+				keys[hole] = keys[j];
+				values[hole] = values[j];
+				ranks[hole] = ranks[j];
+				hole = j;
+			}
+		}
+		keys[hole] = null;
+		values[hole] = null;
+		size--;
+		return removed;
+	}
+
+	/**
+	 * Returns the occupied slots in the order their keys were first put.
+	 * @return the slots, oldest mapping first
+	 */
+	private int[] slotsInOrder() {
+		long[] ranked = new long[size];
+		int n = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				ranked[n++] = (long)ranks[i] << 32 | i;
+			}
+		}
+		Arrays.sort(ranked);
+		int[] slots = new int[n];
+		for (int i = 0; i < n; i++) {
+			slots[i] = (int)ranked[i];
+		}
+		return slots;
+	}
+
+	/**
+	 * Gives the mappings consecutive ranks from 0 in their current order, once the ranks
+	 * handed out reach the largest int after many deletions.
+	 */
+	private void renumber() {
+		int[] slots = slotsInOrder();
+		for (int i = 0; i < slots.length; i++) {
+			ranks[slots[i]] = i;
+		}
+		nextRank = slots.length;
+	}
+
+	/**
+	 * Returns the keys of this map, in the order they were first put.
+	 * The map must not be changed while the keys are iterated.
+	 * @return the keys of this map
+	 */
+	public Iterable<K> keys() {
+		return () -> new Iterator<K>() {
+			private int[] slots = slotsInOrder();
+			private int next = 0;
+
+			public boolean hasNext() {
+				return next < slots.length;
+			}
+
+			@SuppressWarnings("unchecked")
+			public K next() {
+				if (next >= slots.length) {
+					throw new NoSuchElementException();
+				}
+				return (K)keys[slots[next++]];
+			}
+		};
+	}
+
+	/**
+	 * Returns a string representation of this map, as {@code BasicMap} prints the same mappings:
+	 * bucket by bucket of its seven, each bucket in insertion order, with pairs separated by
+	 * a space within a bucket and by a comma between buckets.
+	 * @return a string representation of this map
+	 */
+	@Override
+	public String toString() {
+		int[] slots = slotsInOrder();
+		StringBuilder sb = new StringBuilder();
+		for (int bucket = 0; bucket < BASIC_BUCKETS; bucket++) {
+			boolean first = true;
+			for (int slot : slots) {
+				if (Math.abs(keys[slot].hashCode() % BASIC_BUCKETS) == bucket) {
+					if (first && sb.length() > 0)
+						sb.append(",");
+					else if (!first)
+						sb.append(" ");
+					sb.append("<"+keys[slot]+":"+values[slot]+">");
+					first = false;
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	//******************************************************
+	//*******     BELOW THIS LINE IS TESTING CODE    *******
+	//*******      Edit it as much as you'd like!    *******
+	//*******		Remember to add JavaDoc			 *******
+	//******************************************************
+
+	/**
+	 * Main method I used to test this class.
+	 * @param args args used from command line.
+	 */
+	public static void main(String args[]) {
+		ProbingMap<String, Integer> map = new ProbingMap<>();
+
+		// Testing put() method
+		map.put("apple", 10);
+		map.put("banana", 20);
+		map.put("orange", 30);
+		map.put("grape", 40);
+		map.put("apple", 50); // Updating the value for existing key
+
+		// Testing get() method
+		System.out.println("Value for key 'banana': " + map.get("banana")); // Should print 20
+		System.out.println("Value for key 'apple': " + map.get("apple"));   // Should print 50
+		System.out.println("Value for key 'watermelon': " + map.get("watermelon")); // Should print null
+
+		// Testing delete() method
+		System.out.println("Deleted value for key 'banana': " + map.delete("banana")); // Should print 20
+		System.out.println("Deleted value for key 'watermelon': " + map.delete("watermelon")); // Should print null
+		System.out.println("Size of the map after deletions: " + map.size()); // Should print 3
+
+		// Testing growth and deletion with many keys
+		ProbingMap<Integer, Integer> numbers = new ProbingMap<>();
+		for (int i = 0; i < 100000; i++) {
+			numbers.put(i, i * 2);
+		}
+		for (int i = 0; i < 100000; i += 2) {
+			numbers.delete(i);
+		}
+		boolean ok = numbers.size() == 50000;
+		for (int i = 0; i < 100000; i++) {
+			Integer value = numbers.get(i);
+			ok = ok && (i % 2 == 0 ? value == null : value == i * 2);
+		}
+		System.out.println("Growth and deletion consistent: " + ok); // Should print true
+
+		// Testing a key whose hash code is Integer.MIN_VALUE
+		numbers.put(Integer.MIN_VALUE, 1);
+		System.out.println("Value for key Integer.MIN_VALUE: " + numbers.get(Integer.MIN_VALUE)); // Should print 1
+	}
+
+}
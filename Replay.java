@@ -0,0 +1,253 @@
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A multi-threaded replay of traces against one shared cache, to measure contention.
+ * Each thread replays its own trace, either one given per thread or an interleaved share
+ * of a single trace, through {@code Cache.access(String)}, timing every access. All
+ * threads are released together, and the run reports aggregate throughput over the
+ * wall-clock time, plus accesses, hits, throughput and latency percentiles per thread.
+ */
+public class Replay {
+
+	/**
+	 * The trace each thread replays.
+	 */
+	private Trace[] traces;
+
+	/**
+	 * Hits of each thread in the last run.
+	 */
+	private long[] hits;
+
+	/**
+	 * Time each thread spent replaying in the last run, in nanoseconds.
+	 */
+	private long[] nanos;
+
+	/**
+	 * Access latencies of each thread in the last run.
+	 */
+	private LatencyHistogram[] latencies;
+
+	/**
+	 * Wall-clock time of the last run, from the release of the threads to the end of the last one.
+	 */
+	private long wallNanos;
+
+	/**
+	 * Constructs a replay of one trace split across threads, thread k taking accesses k, k+threads, ...
+	 * so that all threads touch the same addresses at about the same time.
+	 * @param trace the trace to split
+	 * @param threads number of threads
+	 * @throws IllegalArgumentException if trace is null or threads is not positive
+	 */
+	public Replay(Trace trace, int threads) {
+		if (trace == null) {
+			throw new IllegalArgumentException("Trace cannot be null.");
+		}
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Thread count must be positive.");
+		}
+		traces = new Trace[threads];
+		for (int k = 0; k < threads; k++) {
+			int[] share = new int[(trace.length() - k + threads - 1) / threads];
+			for (int i = 0; i < share.length; i++) {
+				share[i] = trace.get(k + i * threads);
+			}
+			traces[k] = Trace.of(trace.addresses(), share);
+		}
+	}
+
+	/**
+	 * Constructs a replay of one trace per thread.
+	 * @param traces the trace of each thread
+	 * @throws IllegalArgumentException if traces is null or empty or holds null
+	 */
+	public Replay(Trace[] traces) {
+		if (traces == null || traces.length == 0) {
+			throw new IllegalArgumentException("Traces are required.");
+		}
+		for (Trace trace : traces) {
+			if (trace == null) {
+				throw new IllegalArgumentException("Trace cannot be null.");
+			}
+		}
+		this.traces = traces.clone();
+	}
+
+	/**
+	 * Replays every thread's trace against a shared cache, one platform thread per trace.
+	 * @param cache the cache to share, which must be thread-safe
+	 * @throws InterruptedException if interrupted while waiting for the threads
+	 * @throws IllegalArgumentException if cache is null
+	 */
+	public void run(Cache cache) throws InterruptedException {
+		if (cache == null) {
+			throw new IllegalArgumentException("Cache cannot be null.");
+		}
+		int threads = traces.length;
+		long[] threadHits = new long[threads];
+		long[] threadNanos = new long[threads];
+		LatencyHistogram[] threadLatencies = new LatencyHistogram[threads];
+		CountDownLatch ready = new CountDownLatch(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] workers = new Thread[threads];
+		for (int k = 0; k < threads; k++) {
+			int thread = k;
+			workers[k] = new Thread(() -> {
+				Trace trace = traces[thread];
+				AddressTable addresses = trace.addresses();
+				LatencyHistogram histogram = new LatencyHistogram();
+				long count = 0;
+				ready.countDown();
+				try {
+					start.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				long begin = System.nanoTime();
+				for (int i = 0; i < trace.length(); i++) {
+					String addr = addresses.name(trace.get(i));
+					long before = System.nanoTime();
+					boolean hit = cache.access(addr);
+					histogram.record(System.nanoTime() - before);
+					if (hit) {
+						count++;
+					}
+				}
+				threadNanos[thread] = System.nanoTime() - begin;
+				threadHits[thread] = count;
+				threadLatencies[thread] = histogram;
+			}, "replay-" + k);
+			workers[k].start();
+		}
+		ready.await();
+		long begin = System.nanoTime();
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		wallNanos = System.nanoTime() - begin;
+		//the joins make the workers' results visible here
+		for (LatencyHistogram histogram : threadLatencies) {
+			if (histogram == null) {
+				throw new IllegalStateException("Replay thread failed.");
+			}
+		}
+		hits = threadHits;
+		nanos = threadNanos;
+		latencies = threadLatencies;
+	}
+
+	/**
+	 * Returns the number of threads.
+	 * @return the number of threads
+	 */
+	public int threads() {
+		return traces.length;
+	}
+
+	/**
+	 * Returns the total number of accesses of all threads.
+	 * @return the number of accesses
+	 */
+	public long accesses() {
+		long total = 0;
+		for (Trace trace : traces) {
+			total += trace.length();
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the total number of hits of the last run.
+	 * @return the number of hits
+	 * @throws IllegalStateException if the replay has not been run
+	 */
+	public long hits() {
+		checkRun();
+		long total = 0;
+		for (long h : hits) {
+			total += h;
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the aggregate throughput of the last run.
+	 * @return accesses of all threads per second of wall-clock time
+	 * @throws IllegalStateException if the replay has not been run
+	 */
+	public double opsPerSecond() {
+		checkRun();
+		return accesses() * 1e9 / Math.max(wallNanos, 1);
+	}
+
+	/**
+	 * Returns the latencies of one thread in the last run.
+	 * @param thread the thread number
+	 * @return the latency histogram of the thread
+	 * @throws IllegalStateException if the replay has not been run
+	 */
+	public LatencyHistogram latencies(int thread) {
+		checkRun();
+		return latencies[thread];
+	}
+
+	/**
+	 * Returns the results of the last run as CSV, one row per thread and a last row, "all",
+	 * for all threads together.
+	 * @param label text for the first column of every row, e.g. the cache measured
+	 * @return the table as CSV text, without a header
+	 * @throws IllegalStateException if the replay has not been run
+	 */
+	public String toCsv(String label) {
+		checkRun();
+		StringBuilder sb = new StringBuilder();
+		LatencyHistogram all = new LatencyHistogram();
+		for (int k = 0; k < traces.length; k++) {
+			all.add(latencies[k]);
+			row(sb, label, Integer.toString(k), traces[k].length(), hits[k], nanos[k], latencies[k]);
+		}
+		row(sb, label, "all", accesses(), hits(), wallNanos, all);
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the CSV header matching toCsv.
+	 * @return the header line
+	 */
+	public static String csvHeader() {
+		return "cache,thread,accesses,hits,hit_rate,ops_per_sec,p50_ns,p99_ns,p999_ns,max_ns\n";
+	}
+
+	/**
+	 * Appends one row of results.
+	 * @param sb where to append
+	 * @param label the first column
+	 * @param thread the thread column
+	 * @param accesses number of accesses
+	 * @param hitCount number of hits
+	 * @param time time taken, in nanoseconds
+	 * @param histogram latencies of the accesses
+	 */
+	private static void row(StringBuilder sb, String label, String thread, long accesses, long hitCount, long time, LatencyHistogram histogram) {
+		double rate = accesses == 0 ? 0 : (double)hitCount / accesses;
+		sb.append(label).append(',').append(thread).append(',').append(accesses).append(',').append(hitCount)
+			.append(String.format(",%.6f,%.0f", rate, accesses * 1e9 / Math.max(time, 1)))
+			.append(',').append(histogram.percentile(0.5)).append(',').append(histogram.percentile(0.99))
+			.append(',').append(histogram.percentile(0.999)).append(',').append(histogram.max()).append('\n');
+	}
+
+	/**
+	 * Makes sure the replay has been run.
+	 * @throws IllegalStateException if it has not
+	 */
+	private void checkRun() {
+		if (hits == null) {
+			throw new IllegalStateException("Replay has not been run.");
+		}
+	}
+}
@@ -0,0 +1,306 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A set-associative hardware cache simulation over a trace of hex memory addresses.
+ * Each address is split into tag, set index and block offset by the block size and the
+ * number of sets, both powers of two, and each set is a separate cache of the given
+ * associativity running one of the Simulator's replacement policies. Sets never
+ * interact, so after one sequential pass that splits the trace into per-set traces,
+ * every (policy, set) pair is replayed as an independent task on a fork-join pool.
+ * <p>
+ * Misses are classified with the three Cs: compulsory on the first access to a block,
+ * capacity if a fully associative LRU cache with as many blocks would also miss, and
+ * conflict otherwise.
+ */
+public class SetAssociative {
+
+	/**
+	 * Kind of an access to a block never accessed before.
+	 */
+	final static private byte COMPULSORY = 0;
+
+	/**
+	 * Kind of an access that a fully associative LRU cache of the same size would miss.
+	 */
+	final static private byte CAPACITY = 1;
+
+	/**
+	 * Kind of an access that a fully associative LRU cache of the same size would hit.
+	 */
+	final static private byte CONFLICT = 2;
+
+	/**
+	 * The trace of hex addresses every cache replays.
+	 */
+	private Trace trace;
+
+	/**
+	 * Bytes per block.
+	 */
+	private int blockSize;
+
+	/**
+	 * Number of sets.
+	 */
+	private int sets;
+
+	/**
+	 * Blocks per set.
+	 */
+	private int ways;
+
+	/**
+	 * Cache options (as in Simulator) of the policies to simulate.
+	 */
+	private int[] cacheTypes;
+
+	/**
+	 * Hit count of each policy.
+	 */
+	private long[] hits;
+
+	/**
+	 * Miss count of each policy by kind, indexed by COMPULSORY, CAPACITY and CONFLICT.
+	 */
+	private long[][] misses;
+
+	/**
+	 * Constructs a simulation of set-associative caches over a trace.
+	 * @param trace the trace of hex addresses to replay
+	 * @param blockSize bytes per block, a power of two
+	 * @param sets number of sets, a power of two
+	 * @param ways blocks per set
+	 * @param cacheTypes cache options to simulate in every set, each a valid Simulator option
+	 * @throws IllegalArgumentException if an argument is null, empty or out of range
+	 */
+	public SetAssociative(Trace trace, int blockSize, int sets, int ways, int[] cacheTypes) {
+		if (trace == null || cacheTypes == null || cacheTypes.length == 0) {
+			throw new IllegalArgumentException("Trace and cache options are required.");
+		}
+		if (blockSize <= 0 || Integer.bitCount(blockSize) != 1) {
+			throw new IllegalArgumentException("Block size must be a power of two.");
+		}
+		if (sets <= 0 || Integer.bitCount(sets) != 1) {
+			throw new IllegalArgumentException("Number of sets must be a power of two.");
+		}
+		if (ways <= 0 || (long)sets * ways > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Associativity must be positive and fit the cache.");
+		}
+		for (int type : cacheTypes) {
+			if (type < 1 || type > Simulator.CACHE_NAMES.length) {
+				throw new IllegalArgumentException("Unknown cache option: " + type);
+			}
+		}
+		this.trace = trace;
+		this.blockSize = blockSize;
+		this.sets = sets;
+		this.ways = ways;
+		this.cacheTypes = cacheTypes.clone();
+	}
+
+	/**
+	 * Splits the trace by set and replays every set under every policy on a pool of the given parallelism.
+	 * @param threads number of worker threads
+	 * @throws InterruptedException if interrupted while waiting for the tasks
+	 * @throws IllegalArgumentException if threads is not positive or the trace holds an address that is not hex
+	 */
+	public void run(int threads) throws InterruptedException {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Thread count must be positive.");
+		}
+		//map every distinct address to a dense block ID and its set, parsing each address once
+		AddressTable names = trace.addresses();
+		AddressTable blocks = new AddressTable();
+		int offsetBits = Integer.numberOfTrailingZeros(blockSize);
+		int[] blockOf = new int[names.size()];
+		int[] setOf = new int[names.size()];
+		for (int id = 0; id < names.size(); id++) {
+			long block = parseAddress(names.name(id)) >>> offsetBits;
+			blockOf[id] = blocks.intern(Long.toHexString(block));
+			setOf[blockOf[id]] = (int)(block & (sets - 1));
+		}
+		int[] counts = new int[sets];
+		for (int i = 0; i < trace.length(); i++) {
+			counts[setOf[blockOf[trace.get(i)]]]++;
+		}
+
+		//split the trace by set, classifying each access against a fully associative LRU cache
+		AddressTable[] tables = new AddressTable[sets];
+		int[][] ids = new int[sets][];
+		byte[][] kinds = new byte[sets][];
+		for (int set = 0; set < sets; set++) {
+			tables[set] = new AddressTable();
+			ids[set] = new int[counts[set]];
+			kinds[set] = new byte[counts[set]];
+		}
+		int[] localId = new int[blocks.size()];
+		Arrays.fill(localId, -1);
+		int[] filled = new int[sets];
+		LruCache reference = new LruCache(sets * ways, blocks);
+		for (int i = 0; i < trace.length(); i++) {
+			int block = blockOf[trace.get(i)];
+			int set = setOf[block];
+			boolean referenceHit = reference.access(block);
+			byte kind;
+			if (localId[block] < 0) {
+				localId[block] = tables[set].intern(blocks.name(block));
+				kind = COMPULSORY;
+			} else {
+				kind = referenceHit ? CONFLICT : CAPACITY;
+			}
+			ids[set][filled[set]] = localId[block];
+			kinds[set][filled[set]++] = kind;
+		}
+
+		List<Callable<long[]>> tasks = new ArrayList<>();
+		List<Integer> rows = new ArrayList<>();
+		for (int row = 0; row < cacheTypes.length; row++) {
+			int type = cacheTypes[row];
+			for (int set = 0; set < sets; set++) {
+				if (counts[set] > 0) {
+					Trace sub = Trace.of(tables[set], ids[set]);
+					byte[] subKinds = kinds[set];
+					tasks.add(() -> replay(type, sub, subKinds));
+					rows.add(row);
+				}
+			}
+		}
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			List<Future<long[]>> results = pool.invokeAll(tasks);
+			long[] totalHits = new long[cacheTypes.length];
+			long[][] totalMisses = new long[cacheTypes.length][3];
+			for (int i = 0; i < results.size(); i++) {
+				long[] counted = results.get(i).get();
+				int row = rows.get(i);
+				totalHits[row] += counted[3];
+				for (int kind = COMPULSORY; kind <= CONFLICT; kind++) {
+					totalMisses[row][kind] += counted[kind];
+				}
+			}
+			hits = totalHits;
+			misses = totalMisses;
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Simulation task failed.", e.getCause());
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Replays the trace of one set against a new cache.
+	 * @param cacheType cache option to simulate
+	 * @param sub the accesses of the set
+	 * @param kinds the kind of each access
+	 * @return the compulsory, capacity and conflict misses, followed by the hits
+	 */
+	private long[] replay(int cacheType, Trace sub, byte[] kinds) {
+		IdCache cache = Simulator.createCache(cacheType, ways, sub);
+		long[] counted = new long[4];
+		for (int i = 0; i < sub.length(); i++) {
+			if (cache.access(sub.get(i))) {
+				counted[3]++;
+			} else {
+				counted[kinds[i]]++;
+			}
+		}
+		return counted;
+	}
+
+	/**
+	 * Parses a hex address, with or without a 0x prefix.
+	 * @param token the address as written in the trace
+	 * @return the address as an unsigned 64-bit value
+	 * @throws IllegalArgumentException if token is not a hex number of at most 64 bits
+	 */
+	public static long parseAddress(String token) {
+		String digits = token.startsWith("0x") || token.startsWith("0X") ? token.substring(2) : token;
+		try {
+			return Long.parseUnsignedLong(digits, 16);
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid hex address: " + token);
+		}
+	}
+
+	/**
+	 * Returns the hit count of a policy.
+	 * @param row position of the cache option in the options given to the constructor
+	 * @return the number of hits
+	 * @throws IllegalStateException if the simulation has not been run
+	 */
+	public long hits(int row) {
+		checkRun();
+		return hits[row];
+	}
+
+	/**
+	 * Returns the compulsory miss count of a policy, the first accesses to each block.
+	 * @param row position of the cache option in the options given to the constructor
+	 * @return the number of compulsory misses
+	 * @throws IllegalStateException if the simulation has not been run
+	 */
+	public long compulsoryMisses(int row) {
+		checkRun();
+		return misses[row][COMPULSORY];
+	}
+
+	/**
+	 * Returns the capacity miss count of a policy, the other misses a fully associative LRU cache would also have.
+	 * @param row position of the cache option in the options given to the constructor
+	 * @return the number of capacity misses
+	 * @throws IllegalStateException if the simulation has not been run
+	 */
+	public long capacityMisses(int row) {
+		checkRun();
+		return misses[row][CAPACITY];
+	}
+
+	/**
+	 * Returns the conflict miss count of a policy, the misses a fully associative LRU cache would not have.
+	 * @param row position of the cache option in the options given to the constructor
+	 * @return the number of conflict misses
+	 * @throws IllegalStateException if the simulation has not been run
+	 */
+	public long conflictMisses(int row) {
+		checkRun();
+		return misses[row][CONFLICT];
+	}
+
+	/**
+	 * Returns the counts of every policy as CSV, one row per policy.
+	 * @return the table as CSV text
+	 * @throws IllegalStateException if the simulation has not been run
+	 */
+	public String toCsv() {
+		checkRun();
+		StringBuilder sb = new StringBuilder("policy,accesses,hits,misses,compulsory,capacity,conflict,hit_rate\n");
+		for (int row = 0; row < cacheTypes.length; row++) {
+			long missCount = misses[row][COMPULSORY] + misses[row][CAPACITY] + misses[row][CONFLICT];
+			double rate = trace.length() == 0 ? 0 : (double)hits[row] / trace.length();
+			sb.append(Simulator.CACHE_NAMES[cacheTypes[row] - 1]).append(',').append(trace.length())
+				.append(',').append(hits[row]).append(',').append(missCount)
+				.append(',').append(misses[row][COMPULSORY]).append(',').append(misses[row][CAPACITY])
+				.append(',').append(misses[row][CONFLICT]).append(String.format(",%.6f", rate)).append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Makes sure the simulation has been run.
+	 * @throws IllegalStateException if it has not
+	 */
+	private void checkRun() {
+		if (hits == null) {
+			throw new IllegalStateException("Simulation has not been run.");
+		}
+	}
+}
@@ -0,0 +1,236 @@
+import java.io.IOException;
+import java.util.TreeSet;
+
+/**
+ * Approximate hit rates of huge traces from a spatially hashed sample of the addresses (SHARDS).
+ * Every address is hashed to 64 bits, and only the accesses to addresses whose hash, as
+ * an unsigned number, is at most a limit are simulated, so a fraction R of the addresses
+ * is sampled, each with all of its accesses. A cache of size c over the whole trace then
+ * behaves like a cache of size c*R over the sample, which needs about R times the memory
+ * and time to simulate.
+ * <p>
+ * The limit comes either from a fixed rate, or from a budget of sampled addresses: the
+ * limit is lowered to the hash of the k-th smallest address, which bounds the memory of
+ * the sampled simulations by k addresses whatever the length of the trace.
+ */
+public class Shards {
+
+	/**
+	 * Name (path to) the trace file.
+	 */
+	private String filename;
+
+	/**
+	 * Largest address hash sampled, as an unsigned number; -1 samples every address.
+	 */
+	private long limit;
+
+	/**
+	 * Number of accesses of the trace, counted by the last run.
+	 */
+	private long accesses;
+
+	/**
+	 * Number of sampled accesses, counted by the last run.
+	 */
+	private long sampledAccesses;
+
+	/**
+	 * Constructs a sampler of a trace.
+	 * @param filename the name (path to) an input file with a sequence of accesses
+	 * @param limit the largest address hash sampled
+	 */
+	private Shards(String filename, long limit) {
+		this.filename = filename;
+		this.limit = limit;
+	}
+
+	/**
+	 * Constructs a sampler of a fixed fraction of the addresses of a trace.
+	 * @param filename the name (path to) an input file with a sequence of accesses
+	 * @param rate the fraction of addresses to sample, in (0, 1]
+	 * @return the sampler
+	 * @throws IllegalArgumentException if filename is null or rate is not in (0, 1]
+	 */
+	public static Shards fixedRate(String filename, double rate) {
+		if (filename == null) {
+			throw new IllegalArgumentException("File name cannot be null.");
+		}
+		if (!(rate > 0 && rate <= 1)) {
+			throw new IllegalArgumentException("Sampling rate must be in (0, 1].");
+		}
+		if (rate == 1) {
+			return new Shards(filename, -1L);
+		}
+		//rate*2^64 does not fit a signed long from 1/2 up, so build the upper half from Long.MIN_VALUE
+		long bound = rate < 0.5 ? (long)(rate * 0x1p64) : Long.MIN_VALUE + (long)((rate - 0.5) * 0x1p64);
+		return new Shards(filename, bound == 0 ? 0 : bound - 1);
+	}
+
+	/**
+	 * Constructs a sampler of at most a fixed number of distinct addresses of a trace,
+	 * those with the smallest hashes. This reads the trace once to find the limit.
+	 * @param filename the name (path to) an input file with a sequence of accesses
+	 * @param samples the largest number of distinct addresses to sample
+	 * @return the sampler, sampling every address if the trace has no more than samples of them
+	 * @throws IOException If an input exception occurred with input filename
+	 * @throws IllegalArgumentException if filename is null or samples is not positive
+	 */
+	public static Shards fixedSize(String filename, int samples) throws IOException {
+		if (filename == null) {
+			throw new IllegalArgumentException("File name cannot be null.");
+		}
+		if (samples <= 0) {
+			throw new IllegalArgumentException("Sample size must be positive.");
+		}
+		//the smallest hashes seen so far; accesses above the current limit are skipped without interning
+		TreeSet<Long> smallest = new TreeSet<>(Long::compareUnsigned);
+		long limit = -1L;
+		try (TraceReader reader = new TraceReader(filename, new AddressTable())) {
+			while (reader.nextSampled(limit, false) >= 0) {
+				if (smallest.add(reader.lastHash()) && smallest.size() > samples) {
+					smallest.pollLast();
+					limit = smallest.last();
+				}
+			}
+		}
+		return new Shards(filename, limit);
+	}
+
+	/**
+	 * Returns the largest address hash sampled.
+	 * @return the limit to pass to TraceReader.nextSampled, -1 for every address
+	 */
+	long limit() {
+		return limit;
+	}
+
+	/**
+	 * Returns the fraction of addresses sampled.
+	 * @return the sampling rate, in (0, 1]
+	 */
+	public double rate() {
+		//(limit+1)/2^64 with limit read as unsigned
+		return ((limit >>> 1) * 2.0 + (limit & 1) + 1) / 0x1p64;
+	}
+
+	/**
+	 * Returns the number of accesses of the trace, counted by the last run.
+	 * @return the number of accesses, or 0 before any run
+	 */
+	public long accesses() {
+		return accesses;
+	}
+
+	/**
+	 * Returns the number of sampled accesses, counted by the last run.
+	 * @return the number of sampled accesses, or 0 before any run
+	 */
+	public long sampledAccesses() {
+		return sampledAccesses;
+	}
+
+	/**
+	 * Computes the approximate LRU miss-ratio curve of the trace from the sample.
+	 * A sampled stack distance d stands for a distance d/R over the whole trace. The number
+	 * of sampled accesses is also corrected towards its expected value R times the number
+	 * of accesses, counting the difference as hits at the smallest distance (SHARDS-adj),
+	 * which removes most of the error of a sample that happens to hold a few very hot addresses.
+	 * @param maxSize the largest cache size to report
+	 * @return the curve as CSV in the format of MissRatioCurve.toCsv, with hits estimated over the whole trace
+	 * @throws IOException If an input exception occurred with input filename
+	 * @throws IllegalArgumentException if maxSize is not positive
+	 */
+	public String mrcCsv(int maxSize) throws IOException {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Max size must be positive.");
+		}
+		double rate = rate();
+		MissRatioCurve curve = new MissRatioCurve(Math.max(1, (int)(maxSize * rate)));
+		try (TraceReader reader = new TraceReader(filename, new AddressTable())) {
+			for (int id = reader.nextSampled(limit, true); id >= 0; id = reader.nextSampled(limit, true)) {
+				curve.access(id);
+			}
+			accesses = reader.count();
+		}
+		sampledAccesses = curve.accesses();
+		long[] sampleHits = curve.hits();
+		double expected = rate * accesses;
+		StringBuilder sb = new StringBuilder("size,hits,hit_rate,miss_ratio\n");
+		for (int c = 1; c <= maxSize; c++) {
+			int scaled = Math.min((int)(c * rate), curve.maxSize());
+			double hitRate = 0;
+			if (scaled > 0 && expected > 0) {
+				hitRate = Math.max(0, Math.min(1, (sampleHits[scaled] + expected - sampledAccesses) / expected));
+			}
+			sb.append(c).append(',').append(Math.round(hitRate * accesses)).append(',');
+			sb.append(String.format("%.6f,%.6f", hitRate, 1 - hitRate)).append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Computes the approximate hit rates of a grid of online cache policies and sizes from
+	 * the sample, in a single pass that feeds every sampled access to one scaled-down cache
+	 * of size max(1, round(size*R)) per (policy, size) pair.
+	 * @param cacheTypes cache options to simulate, each an online Simulator option
+	 * @param sizes cache sizes to simulate, each positive
+	 * @return the hit rates as CSV in the format of Sweep.toCsv
+	 * @throws IOException If an input exception occurred with input filename
+	 * @throws IllegalArgumentException if any argument is null or empty, or holds an invalid option or size
+	 */
+	public String sweepCsv(int[] cacheTypes, int[] sizes) throws IOException {
+		if (cacheTypes == null || sizes == null || cacheTypes.length == 0 || sizes.length == 0) {
+			throw new IllegalArgumentException("Cache options and sizes are required.");
+		}
+		for (int type : cacheTypes) {
+			if (type < 1 || type > Simulator.CACHE_NAMES.length || Simulator.needsTrace(type)) {
+				throw new IllegalArgumentException("Unknown online cache option: " + type);
+			}
+		}
+		for (int size : sizes) {
+			if (size <= 0) {
+				throw new IllegalArgumentException("Cache sizes must be positive.");
+			}
+		}
+		double rate = rate();
+		AddressTable addresses = new AddressTable();
+		IdCache[][] caches = new IdCache[cacheTypes.length][sizes.length];
+		long[][] hits = new long[cacheTypes.length][sizes.length];
+		for (int row = 0; row < cacheTypes.length; row++) {
+			for (int column = 0; column < sizes.length; column++) {
+				int scaled = (int)Math.max(1, Math.round(sizes[column] * rate));
+				caches[row][column] = Simulator.createCache(cacheTypes[row], scaled, addresses);
+			}
+		}
+		try (TraceReader reader = new TraceReader(filename, addresses)) {
+			long count = 0;
+			for (int id = reader.nextSampled(limit, true); id >= 0; id = reader.nextSampled(limit, true)) {
+				count++;
+				for (int row = 0; row < cacheTypes.length; row++) {
+					for (int column = 0; column < sizes.length; column++) {
+						if (caches[row][column].access(id)) {
+							hits[row][column]++;
+						}
+					}
+				}
+			}
+			accesses = reader.count();
+			sampledAccesses = count;
+		}
+		StringBuilder sb = new StringBuilder("size");
+		for (int type : cacheTypes) {
+			sb.append(',').append(Simulator.CACHE_NAMES[type - 1]);
+		}
+		sb.append('\n');
+		for (int column = 0; column < sizes.length; column++) {
+			sb.append(sizes[column]);
+			for (int row = 0; row < cacheTypes.length; row++) {
+				double hitRate = sampledAccesses == 0 ? 0 : (double)hits[row][column] / sampledAccesses;
+				sb.append(String.format(",%.6f", hitRate));
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+}
@@ -2,9 +2,16 @@
 // You should not modify this class in order to match sample runs.
 
 
+import java.util.Arrays;
 import java.util.Scanner;
-import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 /**
  * A class simulating cache accesses and maintenance.
@@ -12,67 +19,368 @@ import java.io.IOException;
  */
 public class Simulator{
 
+	/**
+	 * Short name of each cache replacement policy, indexed by cache option minus one.
+	 */
+	public static final String[] CACHE_NAMES = {"FIFO", "LRU", "LFU", "ARC", "W-TinyLFU", "CLOCK", "CLOCK-Pro", "OPT"};
+
+	/**
+	 * Cache option of the offline OPT policy, which needs the whole trace up front.
+	 */
+	private static final int OPT = 8;
+
+	/**
+	 * Default number of accesses between two checkpoints of a simulation.
+	 */
+	private static final long CHECKPOINT_INTERVAL = 10000000;
+	
+	/**
+	 * Default number of distinct addresses sampled by the trace analysis, which bounds its memory.
+	 */
+	private static final int ANALYSIS_SAMPLES = 1 << 16;
+
+	/**
+	 * Description of each cache replacement policy used in the simulation header.
+	 */
+	private static final String[] CACHE_DESCRIPTIONS = {"an FIFO Cache", "a LRU Cache", "an LFU Cache", "an ARC Cache", "a W-TinyLFU Cache", "a CLOCK Cache", "a CLOCK-Pro Cache", "an OPT Cache"};
+
 	/**
 	 * This is the main method as the entrance of simulation. 
 	 * It sets the paramaters used in simulation.
 	 * @param args command line args 
 	 */
 	public static void main(String[] args) {
-				
-		if (args.length == 1 || (args.length==2 && args[1].equals("-d"))){
 		
-			Scanner stdIn = new Scanner(System.in);
-			
-			//pick which cache replacement policy to simulate
-			System.out.println("Select the cache to simulate: ");
-			System.out.print(" 1-FIFO Cache; 2-LRU Cache; 3-LFU Cache.\n Option: ");
-			
-			int option = stdIn.nextInt();
-			stdIn.nextLine();
-			
-			while (option<1 || option>3){
-				System.out.println("You can only select option 1-3.");
-				System.out.println("Select the cache to simulate: ");
-				System.out.print(" 1-FIFO Cache; 2-LRU Cache; 3-LFU Cache.\n Option: ");
-				option = stdIn.nextInt();
-				stdIn.nextLine();
+		//parse the options following the input file
+		boolean detailed = false;
+		boolean summary = false;
+		String logFile = null;
+		String csvFile = null;
+		int mrcSize = 0;
+		int[] sweepSizes = null;
+		int[] sweepTypes = null;
+		int threads = 0;
+		int[] geometry = null;
+		int replaySize = 0;
+		int segments = 0;
+		double sampleRate = 0;
+		int sampleSize = 0;
+		String convertFile = null;
+		String checkpointFile = null;
+		int checkpointEvery = 0;
+		String resumeFile = null;
+		String forkFile = null;
+		boolean stats = false;
+		int windowSize = 0;
+		String windowFile = null;
+		boolean analyze = false;
+		boolean exact = false;
+		boolean valid = args.length >= 1;
+		for (int i = 1; valid && i < args.length; i++){
+			if (args[i].equals("-d"))
+				detailed = true;
+			else if (args[i].equals("-s"))
+				summary = true;
+			else if (args[i].equals("-stats"))
+				stats = true;
+			else if (args[i].equals("-analyze"))
+				analyze = true;
+			else if (args[i].equals("-exact"))
+				exact = true;
+			else if (args[i].equals("-log") && i+1 < args.length)
+				logFile = args[++i];
+			else if (args[i].equals("-csv") && i+1 < args.length)
+				csvFile = args[++i];
+			else if (args[i].equals("-mrc") && i+1 < args.length)
+				mrcSize = parsePositive(args[++i]);
+			else if (args[i].equals("-sweep") && i+1 < args.length)
+				sweepSizes = parseList(args[++i]);
+			else if (args[i].equals("-policies") && i+1 < args.length)
+				sweepTypes = parseList(args[++i]);
+			else if (args[i].equals("-threads") && i+1 < args.length)
+				threads = parsePositive(args[++i]);
+			else if (args[i].equals("-replay") && i+1 < args.length)
+				replaySize = parsePositive(args[++i]);
+			else if (args[i].equals("-segments") && i+1 < args.length)
+				segments = parsePositive(args[++i]);
+			else if (args[i].equals("-rate") && i+1 < args.length)
+				sampleRate = parseRate(args[++i]);
+			else if (args[i].equals("-samples") && i+1 < args.length)
+				sampleSize = parsePositive(args[++i]);
+			else if (args[i].equals("-convert") && i+1 < args.length)
+				convertFile = args[++i];
+			else if (args[i].equals("-checkpoint") && i+1 < args.length)
+				checkpointFile = args[++i];
+			else if (args[i].equals("-every") && i+1 < args.length)
+				checkpointEvery = parsePositive(args[++i]);
+			else if (args[i].equals("-resume") && i+1 < args.length)
+				resumeFile = args[++i];
+			else if (args[i].equals("-fork") && i+1 < args.length)
+				forkFile = args[++i];
+			else if (args[i].equals("-window") && i+2 < args.length){
+				windowSize = parsePositive(args[++i]);
+				windowFile = args[++i];
 			}
-
-			//pick a cache size to simulate
-			System.out.print("Select cache size to simulate (positive integer in [1,256]): ");
-			
-			int size = stdIn.nextInt();
-			stdIn.nextLine();
-			
-			while (size<1 || size>256){
-				System.out.println("You can only select a size in [1,256].");
-				System.out.print("Select cache size to simulate (positive integer in [1,256]): ");
-				size = stdIn.nextInt();
-				stdIn.nextLine();
+			else if (args[i].equals("-hw") && i+3 < args.length)
+				geometry = new int[] {parsePositive(args[++i]), parsePositive(args[++i]), parsePositive(args[++i])};
+			else
+				valid = false;
+		}
+		//at most one destination for the per-access events
+		if ((summary?1:0) + (logFile!=null?1:0) + (csvFile!=null?1:0) > 1)
+			valid = false;
+		//the miss-ratio curve and the sweep cover many sizes at once and take no single-run option
+		boolean singleRun = detailed || summary || logFile != null || csvFile != null;
+		if (mrcSize != 0 && (singleRun || sweepSizes != null))
+			valid = false;
+		if (sweepSizes != null && singleRun)
+			valid = false;
+		if (mrcSize < 0 || threads < 0 || (sweepTypes != null && sweepTypes.length == 0))
+			valid = false;
+		//the hardware mode splits addresses into blocks and sets, and takes no other mode
+		if (geometry != null && (singleRun || mrcSize != 0 || sweepSizes != null))
+			valid = false;
+		if (geometry != null && (geometry[0] < 0 || geometry[1] < 0 || geometry[2] < 0))
+			valid = false;
+		//the concurrent replay shares one cache of each policy between threads, and takes no other mode
+		if (replaySize != 0 && (singleRun || mrcSize != 0 || sweepSizes != null || geometry != null))
+			valid = false;
+		if (replaySize < 0 || segments < 0 || (segments != 0 && replaySize == 0))
+			valid = false;
+		if ((sweepTypes != null || threads != 0) && sweepSizes == null && geometry == null && replaySize == 0)
+			valid = false;
+		if (sweepSizes != null && sweepSizes.length == 0)
+			valid = false;
+		//sampling approximates the miss-ratio curve, the sweep or the analysis, at a fixed rate or a fixed number of addresses
+		boolean sampled = sampleRate != 0 || sampleSize != 0;
+		if (sampleRate < 0 || sampleSize < 0 || (sampleRate != 0 && sampleSize != 0))
+			valid = false;
+		if (sampled && mrcSize == 0 && sweepSizes == null && !analyze)
+			valid = false;
+		if (sampled && threads != 0)
+			valid = false;
+		//snapshots, stats and windows belong to single runs; the policy and size come from the snapshot when resuming or forking
+		boolean snapshots = checkpointFile != null || resumeFile != null || forkFile != null || stats || windowFile != null;
+		if (snapshots && (mrcSize != 0 || sweepSizes != null || geometry != null || replaySize != 0))
+			valid = false;
+		if (checkpointEvery < 0 || (checkpointEvery != 0 && checkpointFile == null) || windowSize < 0)
+			valid = false;
+		if ((resumeFile != null && forkFile != null) || ((resumeFile != null || forkFile != null) && detailed))
+			valid = false;
+		//the trace analysis takes no option but sampling, which is on unless it is asked to be exact
+		if (exact && (!analyze || sampled))
+			valid = false;
+		if (analyze && (singleRun || snapshots || mrcSize != 0 || sweepSizes != null || sweepTypes != null || threads != 0 || geometry != null || replaySize != 0))
+			valid = false;
+		//the conversion to a binary trace takes no other option
+		if (convertFile != null && args.length != 3)
+			valid = false;
+		
+		if (valid && convertFile != null){
+			try {
+				TraceConverter converter = new TraceConverter();
+				converter.convert(args[0], convertFile);
+				System.out.println("Converted " + converter.accesses() + " accesses to " + converter.distinct() + " addresses into " + convertFile + ".");
 			}
-					
+			catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		else if (valid && analyze){
+			try {
+				Shards sampler = null;
+				if (sampleRate > 0)
+					sampler = Shards.fixedRate(args[0], sampleRate);
+				else if (!exact)
+					sampler = Shards.fixedSize(args[0], sampleSize > 0 ? sampleSize : ANALYSIS_SAMPLES);
+				System.out.print(TraceAnalysis.analyze(args[0], sampler).report());
+			}
+			catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		else if (valid && mrcSize > 0 && sampled){
+			try {
+				Shards shards = sampleSize > 0 ? Shards.fixedSize(args[0], sampleSize) : Shards.fixedRate(args[0], sampleRate);
+				System.out.print(shards.mrcCsv(mrcSize));
+			}
+			catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		else if (valid && mrcSize > 0){
+			try {
+				System.out.print(MissRatioCurve.compute(args[0], mrcSize).toCsv());
+			}
+			catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		else if (valid && sweepSizes != null && sampled){
 			try {
+				Shards shards = sampleSize > 0 ? Shards.fixedSize(args[0], sampleSize) : Shards.fixedRate(args[0], sampleRate);
+				System.out.print(shards.sweepCsv(sweepTypes != null ? sweepTypes : onlineCacheTypes(), sweepSizes));
+			}
+			catch(IOException e) {
+				e.printStackTrace();
+			}
+			catch(IllegalArgumentException e) {
+				System.out.println(e.getMessage());
+			}
+		}
+		
+		else if (valid && geometry != null){
+			try {
+				Trace trace = Trace.load(args[0]);
+				SetAssociative hardware = new SetAssociative(trace, geometry[0], geometry[1], geometry[2],
+						sweepTypes != null ? sweepTypes : allCacheTypes());
+				hardware.run(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+				System.out.print(hardware.toCsv());
+			}
+			catch(IOException | InterruptedException e) {
+				e.printStackTrace();
+			}
+			catch(IllegalArgumentException e) {
+				System.out.println(e.getMessage());
+			}
+		}
+		
+		else if (valid && replaySize > 0){
+			try {
+				Trace trace = Trace.load(args[0]);
+				Replay replay = new Replay(trace, threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+				int[] types = sweepTypes != null ? sweepTypes : onlineCacheTypes();
+				for (int type : types)
+					if (type < 1 || type > CACHE_NAMES.length || needsTrace(type))
+						throw new IllegalArgumentException("Unknown online cache option: " + type);
+				System.out.print(Replay.csvHeader());
+				for (int type : types){
+					//each policy behind one lock, then striped across segments
+					Cache locked = new SynchronizedCache(createCache(type, replaySize));
+					replay.run(locked);
+					System.out.print(replay.toCsv(CACHE_NAMES[type-1] + "/synchronized"));
+					Cache striped = segments > 0 ? new ConcurrentCache(type, replaySize, segments) : new ConcurrentCache(type, replaySize);
+					replay.run(striped);
+					System.out.print(replay.toCsv(CACHE_NAMES[type-1] + "/striped"));
+				}
+			}
+			catch(IOException | InterruptedException e) {
+				e.printStackTrace();
+			}
+			catch(IllegalArgumentException e) {
+				System.out.println(e.getMessage());
+			}
+		}
+		
+		else if (valid && sweepSizes != null){
+			try {
+				Trace trace = Trace.load(args[0]);
+				Sweep sweep = new Sweep(trace, sweepTypes != null ? sweepTypes : allCacheTypes(), sweepSizes);
+				sweep.run(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+				System.out.print(sweep.toCsv());
+			}
+			catch(IOException | InterruptedException e) {
+				e.printStackTrace();
+			}
+			catch(IllegalArgumentException e) {
+				System.out.println(e.getMessage());
+			}
+		}
+				
+		else if (valid){
+		
+			try {
+				Checkpoint start;
+				if (resumeFile != null || forkFile != null){
+					//the snapshot decides the policy, the size and whether the simulation is detailed
+					start = Checkpoint.load(resumeFile != null ? resumeFile : forkFile, resumeFile != null ? args[0] : null);
+					if (forkFile != null)
+						start = start.fork();
+				}
+				else{
+					Scanner stdIn = new Scanner(System.in);
+					
+					//pick which cache replacement policy to simulate
+					System.out.println("Select the cache to simulate: ");
+					System.out.print(" 1-FIFO Cache; 2-LRU Cache; 3-LFU Cache; 4-ARC Cache; 5-W-TinyLFU Cache; 6-CLOCK Cache; 7-CLOCK-Pro Cache; 8-OPT Cache.\n Option: ");
+					
+					int option = stdIn.nextInt();
+					stdIn.nextLine();
+					
+					while (option<1 || option>CACHE_NAMES.length){
+						System.out.println("You can only select option 1-"+CACHE_NAMES.length+".");
+						System.out.println("Select the cache to simulate: ");
+						System.out.print(" 1-FIFO Cache; 2-LRU Cache; 3-LFU Cache; 4-ARC Cache; 5-W-TinyLFU Cache; 6-CLOCK Cache; 7-CLOCK-Pro Cache; 8-OPT Cache.\n Option: ");
+						option = stdIn.nextInt();
+						stdIn.nextLine();
+					}
+		
+					//pick a cache size to simulate
+					System.out.print("Select cache size to simulate (positive integer in [1,256]): ");
+					
+					int size = stdIn.nextInt();
+					stdIn.nextLine();
+					
+					while (size<1 || size>256){
+						System.out.println("You can only select a size in [1,256].");
+						System.out.print("Select cache size to simulate (positive integer in [1,256]): ");
+						size = stdIn.nextInt();
+						stdIn.nextLine();
+					}
+					
+					start = newSimulation(args[0], option, size, detailed);
+				}
+				
 				//simulate with the specified cache replacement, cache size, 
 				//and a file for a seq of accesses
-				simulate(args[0], option, size, (args.length==2 && args[1].equals("-d")));
+				long interval = checkpointEvery > 0 ? checkpointEvery : CHECKPOINT_INTERVAL;
+				//a resumed simulation appends to the outputs it wrote up to the snapshot, any other one starts them over
+				String outputFile = logFile != null ? logFile : csvFile;
+				if (summary){
+					simulate(args[0], start, new NullSink(), checkpointFile, interval, stats, windowSize, windowFile, null);
+				}
+				else if (outputFile != null){
+					try (Writer out = openOutput(outputFile, start.logLength())){
+						AccessSink sink = (logFile != null) ? new TextSink(out) : new CsvSink(out, start.logLength() < 0);
+						simulate(args[0], start, sink, checkpointFile, interval, stats, windowSize, windowFile, outputFile);
+					}
+				}
+				else{
+					simulate(args[0], start, new TextSink(new OutputStreamWriter(System.out)), checkpointFile, interval, stats, windowSize, windowFile, null);
+				}
 			}
 			catch(IOException e) {
 				//System.out.println(e.toString());
 				e.printStackTrace();
 				return;
 			}
+			catch(IllegalArgumentException e) {
+				System.out.println(e.getMessage());
+			}
 						
 		}
 		
 		else {
 			//Usage for incorrect format
-			System.out.println("Usage: java Simulator InputFile [-d]");
+			System.out.println("Usage: java Simulator InputFile [-d] [-s | -log LogFile | -csv CsvFile] [-stats] [-window N File] [-checkpoint File [-every N]]");
+			System.out.println("       java Simulator InputFile (-resume | -fork) File [-s | -log LogFile | -csv CsvFile] [-stats] [-window N File] [-checkpoint File [-every N]]");
+			System.out.println("       java Simulator InputFile -mrc MaxSize [-rate R | -samples K]");
+			System.out.println("       java Simulator InputFile -sweep Sizes [-policies Options] [-threads N | -rate R | -samples K]");
+			System.out.println("       java Simulator InputFile -hw BlockSize Sets Ways [-policies Options] [-threads N]");
+			System.out.println("       java Simulator InputFile -replay Size [-policies Options] [-threads N] [-segments N]");
+			System.out.println("       java Simulator InputFile -analyze [-exact | -rate R | -samples K]");
+			System.out.println("       java Simulator InputFile -convert BinaryFile");
+			System.out.println("InputFile may be a text or binary trace, and may be gzip-compressed.");
 		}
 		
 	}
 	
 	/**
-	 * This is the method of the actual step-by-step simulation.
+	 * This is the method of the actual step-by-step simulation, logging every access to standard output.
 	 * @param filename the name (path to) an input file with the access sequence
 	 * @param cacheType cache replacement policy to simulate
 	 * @param size cache size to simulate
@@ -80,59 +388,201 @@ public class Simulator{
 	 * @throws IOException If an input exception occurred with input filename
 	 */
 	public static void simulate(String filename, int cacheType, int size, boolean detailed) throws IOException{
+		simulate(filename, cacheType, size, detailed, new TextSink(new OutputStreamWriter(System.out)));
+	}
+	
+	/**
+	 * This is the method of the actual step-by-step simulation.
+	 * Each access is reported to the given sink, and the final statistics go to standard output.
+	 * @param filename the name (path to) an input file with the access sequence
+	 * @param cacheType cache replacement policy to simulate
+	 * @param size cache size to simulate
+	 * @param detailed whether the detailed record of each access would be recorded
+	 * @param sink where to report each access
+	 * @throws IOException If an input exception occurred with input filename
+	 * @throws IllegalArgumentException if sink is null
+	 */
+	public static void simulate(String filename, int cacheType, int size, boolean detailed, AccessSink sink) throws IOException{
 	
-		BasicList<String> addrQueue = fileToAddrQueue(filename);	
-		Cache cache;
-		BasicMap<String, Integer> accRecord=null;
-		BasicMap<String, Integer> hitRecord=null;
-		int hits=0;
+		if (sink == null)
+			throw new IllegalArgumentException("sink cannot be null.");
+		simulate(filename, newSimulation(filename, cacheType, size, detailed), sink, null, 0, false);
+	}
+	
+	/**
+	 * This is the method of the step-by-step simulation from a snapshot that also writes
+	 * the windowed hit-rate series to a file, if one is given.
+	 * @param filename the name (path to) an input file with the access sequence
+	 * @param start the simulation to continue
+	 * @param sink where to report each access
+	 * @param checkpointFile the name (path to) the file to save the simulation to, or null
+	 * @param interval number of accesses between two checkpoints
+	 * @param stats whether to measure the latency of every access
+	 * @param window number of accesses per row of the series
+	 * @param windowFile the name (path to) the CSV file of the series, or null
+	 * @param logFile the name (path to) the file sink writes to, or null
+	 * @throws IOException If an input exception occurred with input filename, or an output one
+	 */
+	private static void simulate(String filename, Checkpoint start, AccessSink sink, String checkpointFile, long interval, boolean stats, long window, String windowFile, String logFile) throws IOException{
+		if (windowFile == null){
+			simulate(filename, start, sink, checkpointFile, interval, stats, logFile, null, null);
+			return;
+		}
+		try (Writer out = openOutput(windowFile, start.seriesLength());
+				WindowSink series = new WindowSink(out, window, sink, start)){
+			simulate(filename, start, series, checkpointFile, interval, stats, logFile, windowFile, series);
+		}
+	}
+	
+	/**
+	 * This is the method that opens an output file of a simulation. The file is started over,
+	 * unless the simulation resumes from a snapshot that recorded its length: then what was
+	 * written after the snapshot is dropped, and the simulation appends from there on.
+	 * @param filename the name (path to) the output file
+	 * @param length the length of the file at the snapshot, or -1 to start it over
+	 * @return a writer to the file
+	 * @throws IOException If an output exception occurred, or the file is shorter than at the snapshot
+	 */
+	private static Writer openOutput(String filename, long length) throws IOException{
+		if (length < 0)
+			return new FileWriter(filename);
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.WRITE)){
+			if (channel.size() < length)
+				throw new IOException("Output file is shorter than at the checkpoint: " + filename);
+			channel.truncate(length);
+		}
+		return new FileWriter(filename, true);
+	}
+	
+	/**
+	 * This is the method that measures the output files of a simulation for a snapshot.
+	 * @param filename the name (path to) an output file, or null
+	 * @return its length in bytes, or -1 if there is no file
+	 * @throws IOException If an input exception occurred
+	 */
+	private static long outputLength(String filename) throws IOException{
+		return filename != null ? Files.size(Paths.get(filename)) : -1;
+	}
+	
+	/**
+	 * This is the method that sets up a simulation at the start of the trace.
+	 * @param filename the name (path to) an input file with the access sequence
+	 * @param cacheType cache replacement policy to simulate
+	 * @param size cache size to simulate
+	 * @param detailed whether the detailed record of each access would be recorded
+	 * @return the snapshot of the simulation before its first access
+	 * @throws IOException If an input exception occurred with input filename
+	 */
+	public static Checkpoint newSimulation(String filename, int cacheType, int size, boolean detailed) throws IOException{
+		IdCache cache;
 		
-		switch (cacheType){
-			case 1: 
-				cache = new FifoCache(size);
-				System.out.format("Simulating an FIFO Cache of size %d.\n", size);
-				break;
-			case 2:
-				cache = new LruCache(size);
-				System.out.format("Simulating a LRU Cache of size %d.\n", size);
-				break;
-			case 3:
-				cache = new LfuCache(size);
-				System.out.format("Simulating an LFU Cache of size %d.\n", size);
-				break;
-			default:
-				throw new IllegalArgumentException("cache option can only be 1-3.");
+		if (needsTrace(cacheType)){
+			//load the whole trace for the offline policy, then stream it again with the same IDs
+			Trace trace = Trace.load(filename);
+			cache = createCache(cacheType, size, trace);
 		}
+		else{
+			cache = createCache(cacheType, size, new AddressTable());
+		}
+		ProbingMap<String, Integer> accRecord = detailed ? new ProbingMap<>() : null;
+		ProbingMap<String, Integer> hitRecord = detailed ? new ProbingMap<>() : null;
+		return new Checkpoint(cacheType, size, cache, 0, 0, 0, -1, -1, null, accRecord, hitRecord);
+	}
+	
+	/**
+	 * This is the method of the step-by-step simulation from a snapshot, taken anywhere in the trace.
+	 * The simulation is detailed if the snapshot has records. If a checkpoint file is given,
+	 * the simulation is saved to it every interval accesses and at the end of the trace.
+	 * With stats, every access is measured by an InstrumentedCache, whose report follows the hit rate.
+	 * @param filename the name (path to) an input file with the access sequence
+	 * @param start the simulation to continue
+	 * @param sink where to report each access
+	 * @param checkpointFile the name (path to) the file to save the simulation to, or null
+	 * @param interval number of accesses between two checkpoints
+	 * @param stats whether to measure the latency of every access
+	 * @throws IOException If an input exception occurred with input filename, or an output one with checkpointFile
+	 * @throws IllegalArgumentException if start or sink is null, or interval is not positive with a checkpoint file
+	 */
+	public static void simulate(String filename, Checkpoint start, AccessSink sink, String checkpointFile, long interval, boolean stats) throws IOException{
+		simulate(filename, start, sink, checkpointFile, interval, stats, null, null, null);
+	}
+	
+	/**
+	 * This is the method of the step-by-step simulation from a snapshot, which also records
+	 * in each checkpoint how long the output files are, so a resumed simulation can append to them.
+	 * @param filename the name (path to) an input file with the access sequence
+	 * @param start the simulation to continue
+	 * @param sink where to report each access
+	 * @param checkpointFile the name (path to) the file to save the simulation to, or null
+	 * @param interval number of accesses between two checkpoints
+	 * @param stats whether to measure the latency of every access
+	 * @param logFile the name (path to) the per-access log or CSV file sink writes to, or null
+	 * @param windowFile the name (path to) the windowed hit-rate series sink writes to, or null
+	 * @param series the sink of the windowed hit-rate series, which counts the evictions of the cache, or null
+	 * @throws IOException If an input exception occurred with input filename, or an output one with checkpointFile
+	 * @throws IllegalArgumentException if start or sink is null, or interval is not positive with a checkpoint file
+	 */
+	private static void simulate(String filename, Checkpoint start, AccessSink sink, String checkpointFile, long interval, boolean stats, String logFile, String windowFile, WindowSink series) throws IOException{
+	
+		if (start == null || sink == null)
+			throw new IllegalArgumentException("snapshot and sink cannot be null.");
+		if (checkpointFile != null && interval <= 0)
+			throw new IllegalArgumentException("checkpoint interval must be positive.");
+		int cacheType = start.cacheType();
+		//the snapshots keep the bare cache, so only the accesses themselves are measured
+		IdCache bare = start.cache();
+		InstrumentedCache instrumented = stats ? new InstrumentedCache(bare) : null;
+		IdCache cache = stats ? instrumented : bare;
+		if (series != null)
+			cache.setListener(series);
+		AddressTable addresses = cache.addresses();
+		ProbingMap<String, Integer> accRecord = start.accRecord();
+		ProbingMap<String, Integer> hitRecord = start.hitRecord();
+		boolean detailed = accRecord != null && hitRecord != null;
+		long hits = start.hits();
+		long index = start.accesses();
+		
+		if (index == 0)
+			System.out.format("Simulating %s of size %d.\n", CACHE_DESCRIPTIONS[cacheType-1], start.size());
+		else
+			System.out.format("Resuming %s of size %d after access %d.\n", CACHE_DESCRIPTIONS[cacheType-1], start.size(), index);
 		System.out.println("---------------------------------------------");
+		System.out.flush();
 		
-		if (detailed){
-			accRecord = new BasicMap<>();
-			hitRecord = new BasicMap<>();
-		}
-		int index = 0;
-		for (String addr: addrQueue){
-			System.out.format("Access %d: %s", index, addr);
-			if (detailed)
-				updateRecord(accRecord, addr);
-				
-			if (cache.access(addr)){			
-				System.out.println(" - Hit");
-				hits++;
+		try (TraceReader reader = new TraceReader(filename, addresses)){
+			if (start.offset() > 0)
+				reader.seek(start.offset(), index);
+			for (int id = reader.next(); id >= 0; id = reader.next()){
 				if (detailed)
-					updateRecord(hitRecord, addr);
+					updateRecord(accRecord, addresses.name(id));
+					
+				boolean hit = cache.access(id);
+				if (hit){
+					hits++;
+					if (detailed)
+						updateRecord(hitRecord, addresses.name(id));
+				}
+				sink.access(index, id, hit, cache);
+				index++;
+				if (checkpointFile != null && index % interval == 0){
+					sink.flush();
+					new Checkpoint(cacheType, start.size(), bare, index, hits, reader.offset(),
+							outputLength(logFile), outputLength(windowFile),
+							series != null ? series.openWindow() : null, accRecord, hitRecord).save(checkpointFile, filename);
+				}
 			}
-			else{
-				System.out.println(" - Miss");
+			if (checkpointFile != null){
+				sink.flush();
+				new Checkpoint(cacheType, start.size(), bare, index, hits, reader.offset(),
+						outputLength(logFile), outputLength(windowFile),
+						series != null ? series.openWindow() : null, accRecord, hitRecord).save(checkpointFile, filename);
 			}
-			System.out.println("cache content after access: ");
-			System.out.println(cache);
-			System.out.print(cache.isFull()?"cache full, ":"cache not full, ");
-			System.out.println("next to replace: "+ cache.nextToReplace());
-			System.out.println("---------------------------------------------");
-			index++;
 		}
+		sink.flush();
 		
 		System.out.format("Hit Rate: %.2f%%\n", (double)hits/(index+1)*100 );
+		if (stats)
+			System.out.println(instrumented.report());
 
 		if (detailed){
 			System.out.println("Accesses: "+ accRecord);
@@ -141,6 +591,117 @@ public class Simulator{
 	
 	}
 	
+	/**
+	 * This is the method that creates a cache of the given replacement policy.
+	 * @param cacheType cache replacement policy, the option number 1-8
+	 * @param size cache size
+	 * @param addresses table the address IDs given to the cache come from
+	 * @return a new empty cache
+	 * @throws IllegalArgumentException if cacheType is not a valid option, or needs the whole trace
+	 */
+	public static IdCache createCache(int cacheType, int size, AddressTable addresses){
+		switch (cacheType){
+			case 1: 
+				return new FifoCache(size, addresses);
+			case 2:
+				return new LruCache(size, addresses);
+			case 3:
+				return new LfuCache(size, addresses);
+			case 4:
+				return new ArcCache(size, addresses);
+			case 5:
+				return new TinyLfuCache(size, addresses);
+			case 6:
+				return new ClockCache(size, addresses);
+			case 7:
+				return new ClockProCache(size, addresses);
+			case OPT:
+				throw new IllegalArgumentException("the OPT cache needs the whole trace up front.");
+			default:
+				throw new IllegalArgumentException("cache option can only be 1-"+CACHE_NAMES.length+".");
+		}
+	}
+	
+	/**
+	 * This is the method that creates a cache of the given replacement policy with its own address table,
+	 * in which the cache releases the IDs of the addresses it forgets, so the table stays within
+	 * the size of the cache (twice that for ARC and CLOCK-Pro) however many addresses it sees.
+	 * @param cacheType cache replacement policy, the option number 1-8
+	 * @param size cache size
+	 * @return a new empty cache
+	 * @throws IllegalArgumentException if cacheType is not a valid option, or needs the whole trace
+	 */
+	public static IdCache createCache(int cacheType, int size){
+		switch (cacheType){
+			case 1: 
+				return new FifoCache(size);
+			case 2:
+				return new LruCache(size);
+			case 3:
+				return new LfuCache(size);
+			case 4:
+				return new ArcCache(size);
+			case 5:
+				return new TinyLfuCache(size);
+			case 6:
+				return new ClockCache(size);
+			case 7:
+				return new ClockProCache(size);
+			case OPT:
+				throw new IllegalArgumentException("the OPT cache needs the whole trace up front.");
+			default:
+				throw new IllegalArgumentException("cache option can only be 1-"+CACHE_NAMES.length+".");
+		}
+	}
+	
+	/**
+	 * This is the method that creates a cache of the given replacement policy to replay a whole trace.
+	 * Unlike the other policies, the offline OPT policy can only be created this way.
+	 * @param cacheType cache replacement policy, the option number 1-8
+	 * @param size cache size
+	 * @param trace the trace the cache will replay, in order
+	 * @return a new empty cache
+	 * @throws IllegalArgumentException if cacheType is not a valid option
+	 */
+	public static IdCache createCache(int cacheType, int size, Trace trace){
+		if (cacheType == OPT)
+			return new OptCache(size, trace);
+		return createCache(cacheType, size, trace.addresses());
+	}
+	
+	/**
+	 * This is the method that tells whether a replacement policy needs the whole trace up front.
+	 * @param cacheType cache replacement policy, the option number
+	 * @return true if the cache can only be created from a trace
+	 */
+	public static boolean needsTrace(int cacheType){
+		return cacheType == OPT;
+	}
+	
+	/**
+	 * This is the method that lists every cache option.
+	 * @return the option numbers 1 to the number of replacement policies
+	 */
+	public static int[] allCacheTypes(){
+		int[] types = new int[CACHE_NAMES.length];
+		for (int i = 0; i < types.length; i++)
+			types[i] = i+1;
+		return types;
+	}
+	
+	/**
+	 * This is the method that lists every cache option that can run without the whole trace.
+	 * @return the option numbers of the online replacement policies
+	 */
+	public static int[] onlineCacheTypes(){
+		int[] types = new int[CACHE_NAMES.length];
+		int count = 0;
+		for (int type = 1; type <= CACHE_NAMES.length; type++)
+			if (!needsTrace(type))
+				types[count++] = type;
+		return Arrays.copyOf(types, count);
+	}
+	
 	/**
 	 * This is the method that construct a list of accesses from the input file.
 	 * @param filename the name (path to) an input file with a sequence of accesses
@@ -149,23 +710,69 @@ public class Simulator{
 	 */
 	public static BasicList<String> fileToAddrQueue(String filename) throws IOException {
 		
-		Scanner s = new Scanner(new File(filename));		
 		BasicList<String> queue = new BasicList<>();
 		
-		while(s.hasNext()) {
-			queue.addLast(s.next());			
+		//read through TraceReader, so binary and gzip files work too
+		try (TraceReader reader = new TraceReader(filename, new AddressTable())){
+			for (int id = reader.next(); id >= 0; id = reader.next()) {
+				queue.addLast(reader.addresses().name(id));
+			}
 		}
 		
 		return queue;
 	}
 	
+	/**
+	 * This is the method that parses a positive integer option value.
+	 * @param value the text of the option value
+	 * @return the value, or -1 if it is not a positive integer
+	 */
+	private static int parsePositive(String value){
+		try {
+			int n = Integer.parseInt(value);
+			return n > 0 ? n : -1;
+		}
+		catch(NumberFormatException e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * This is the method that parses a sampling rate option value.
+	 * @param value the text of the option value
+	 * @return the rate, or -1 if it is not a number in (0, 1]
+	 */
+	private static double parseRate(String value){
+		try {
+			double rate = Double.parseDouble(value);
+			return rate > 0 && rate <= 1 ? rate : -1;
+		}
+		catch(NumberFormatException e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * This is the method that parses a list option value such as "1-8,16,32".
+	 * @param value the text of the option value
+	 * @return the values of the list, or an empty array if it is not a valid list
+	 */
+	private static int[] parseList(String value){
+		try {
+			return Sweep.parseList(value);
+		}
+		catch(IllegalArgumentException e) {
+			return new int[0];
+		}
+	}
+	
 	/**
 	 * This is the method that update the record of an address. 
 	 * Always increment the counter value of addr by 1 in the record.
 	 * @param record the record to be updated (a hash map)
 	 * @param addr the address involved in the updating	 
 	 */
-	public static void updateRecord(BasicMap<String, Integer> record, String addr){
+	public static void updateRecord(ProbingMap<String, Integer> record, String addr){
 		if (record==null || addr==null)
 			return;
 			
@@ -0,0 +1,57 @@
+import java.util.Arrays;
+
+/**
+ * A direct-addressed index from dense address IDs to cache slots.
+ * Since IDs come from an {@code AddressTable} they can index a plain int array,
+ * which grows on demand as higher IDs show up.
+ */
+class SlotIndex {
+
+	/**
+	 * Slot of each ID, or -1 if the ID is not resident.
+	 */
+	private int[] slots;
+
+	/**
+	 * Constructs an index sized for the given number of IDs.
+	 * @param expected the number of IDs expected to be indexed
+	 */
+	public SlotIndex(int expected) {
+		slots = new int[Math.max(expected, 16)];
+		Arrays.fill(slots, -1);
+	}
+
+	/**
+	 * Returns the slot of an ID.
+	 * @param id the ID to look up
+	 * @return the slot holding the ID, or -1 if it is not resident
+	 */
+	public int get(int id) {
+		return id < slots.length ? slots[id] : -1;
+	}
+
+	/**
+	 * Records the slot of an ID.
+	 * @param id the ID to record
+	 * @param slot the slot now holding the ID
+	 */
+	public void put(int id, int slot) {
+		if (id >= slots.length) {
+			int[] grown = new int[Math.max(id + 1, slots.length * 2)];
+			System.arraycopy(slots, 0, grown, 0, slots.length);
+			Arrays.fill(grown, slots.length, grown.length, -1);
+			slots = grown;
+		}
+		slots[id] = slot;
+	}
+
+	/**
+	 * Marks an ID as no longer resident.
+	 * @param id the ID to remove
+	 */
+	public void remove(int id) {
+		if (id < slots.length) {
+			slots[id] = -1;
+		}
+	}
+}
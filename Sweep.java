@@ -0,0 +1,181 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A parameter sweep replaying one trace against a grid of cache policies and sizes.
+ * The trace is loaded once and shared read-only, and every (policy, size) pair runs as
+ * an independent task with its own cache on a fork-join pool, so the grid spreads over
+ * all available cores.
+ */
+public class Sweep {
+
+	/**
+	 * The trace every cache replays.
+	 */
+	private Trace trace;
+
+	/**
+	 * Cache options (as in Simulator) of the grid rows.
+	 */
+	private int[] cacheTypes;
+
+	/**
+	 * Cache sizes of the grid columns.
+	 */
+	private int[] sizes;
+
+	/**
+	 * Hit count of each (policy, size) pair, indexed like cacheTypes and sizes.
+	 */
+	private long[][] hits;
+
+	/**
+	 * Constructs a sweep of the given grid over a trace.
+	 * @param trace the trace to replay
+	 * @param cacheTypes cache options to simulate, each a valid Simulator option
+	 * @param sizes cache sizes to simulate, each positive
+	 * @throws IllegalArgumentException if any argument is null or empty, or holds an invalid option or size
+	 */
+	public Sweep(Trace trace, int[] cacheTypes, int[] sizes) {
+		if (trace == null || cacheTypes == null || sizes == null || cacheTypes.length == 0 || sizes.length == 0) {
+			throw new IllegalArgumentException("Trace, cache options and sizes are required.");
+		}
+		for (int type : cacheTypes) {
+			if (type < 1 || type > Simulator.CACHE_NAMES.length) {
+				throw new IllegalArgumentException("Unknown cache option: " + type);
+			}
+		}
+		for (int size : sizes) {
+			if (size <= 0) {
+				throw new IllegalArgumentException("Cache sizes must be positive.");
+			}
+		}
+		this.trace = trace;
+		this.cacheTypes = cacheTypes.clone();
+		this.sizes = sizes.clone();
+	}
+
+	/**
+	 * Runs every (policy, size) pair of the grid on a pool of the given parallelism.
+	 * @param threads number of worker threads
+	 * @throws InterruptedException if interrupted while waiting for the tasks
+	 * @throws IllegalArgumentException if threads is not positive
+	 */
+	public void run(int threads) throws InterruptedException {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Thread count must be positive.");
+		}
+		List<Callable<Long>> tasks = new ArrayList<>();
+		for (int type : cacheTypes) {
+			for (int size : sizes) {
+				tasks.add(() -> replay(type, size));
+			}
+		}
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			List<Future<Long>> results = pool.invokeAll(tasks);
+			long[][] grid = new long[cacheTypes.length][sizes.length];
+			for (int i = 0; i < results.size(); i++) {
+				grid[i / sizes.length][i % sizes.length] = results.get(i).get();
+			}
+			hits = grid;
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Simulation task failed.", e.getCause());
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Replays the whole trace against a new cache.
+	 * @param cacheType cache option to simulate
+	 * @param size cache size to simulate
+	 * @return the number of hits
+	 */
+	private long replay(int cacheType, int size) {
+		IdCache cache = Simulator.createCache(cacheType, size, trace);
+		long count = 0;
+		for (int i = 0; i < trace.length(); i++) {
+			if (cache.access(trace.get(i))) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the hit count of one grid cell.
+	 * @param row position of the cache option in the options given to the constructor
+	 * @param column position of the size in the sizes given to the constructor
+	 * @return the number of hits
+	 * @throws IllegalStateException if the sweep has not been run
+	 */
+	public long hits(int row, int column) {
+		if (hits == null) {
+			throw new IllegalStateException("Sweep has not been run.");
+		}
+		return hits[row][column];
+	}
+
+	/**
+	 * Returns the hit rates of the grid as CSV, one row per size and one column per policy.
+	 * @return the table as CSV text
+	 * @throws IllegalStateException if the sweep has not been run
+	 */
+	public String toCsv() {
+		if (hits == null) {
+			throw new IllegalStateException("Sweep has not been run.");
+		}
+		StringBuilder sb = new StringBuilder("size");
+		for (int type : cacheTypes) {
+			sb.append(',').append(Simulator.CACHE_NAMES[type - 1]);
+		}
+		sb.append('\n');
+		for (int column = 0; column < sizes.length; column++) {
+			sb.append(sizes[column]);
+			for (int row = 0; row < cacheTypes.length; row++) {
+				double rate = trace.length() == 0 ? 0 : (double)hits[row][column] / trace.length();
+				sb.append(String.format(",%.6f", rate));
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Parses a list of positive integers such as "1-8,16,32", where a-b stands for every value from a to b.
+	 * @param spec the list to parse
+	 * @return the values in the order given
+	 * @throws IllegalArgumentException if spec is not such a list
+	 */
+	public static int[] parseList(String spec) {
+		List<Integer> values = new ArrayList<>();
+		try {
+			for (String part : spec.split(",")) {
+				int dash = part.indexOf('-');
+				int from = Integer.parseInt(dash < 0 ? part : part.substring(0, dash));
+				int to = dash < 0 ? from : Integer.parseInt(part.substring(dash + 1));
+				if (from <= 0 || to < from) {
+					throw new IllegalArgumentException("Invalid range: " + part);
+				}
+				for (int v = from; v <= to; v++) {
+					values.add(v);
+				}
+			}
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid list: " + spec);
+		}
+		int[] result = new int[values.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = values.get(i);
+		}
+		return result;
+	}
+}
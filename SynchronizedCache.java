@@ -0,0 +1,74 @@
+/**
+ * A thread-safe view of a cache that serializes every call on a single lock.
+ * This is the simplest way to share any cache between threads, and the baseline
+ * the striped {@code ConcurrentCache} is measured against.
+ */
+public class SynchronizedCache implements Cache {
+
+	/**
+	 * The cache every call is delegated to, only while holding this object's lock.
+	 */
+	private Cache cache;
+
+	/**
+	 * Constructs a synchronized view of a cache, which must not be used directly afterwards.
+	 * @param cache the cache to wrap
+	 * @throws IllegalArgumentException if cache is null
+	 */
+	public SynchronizedCache(Cache cache){
+		if (cache == null) {
+			throw new IllegalArgumentException("Cache cannot be null.");
+		}
+		this.cache = cache;
+	}
+
+	/**
+	 * Checks if the cache is full.
+	 * @return true if the cache is full, false otherwise
+	 */
+	public synchronized boolean isFull(){
+		return cache.isFull();
+	}
+
+	/**
+	 * Reports the maximum number of items allowed in the cache.
+	 * @return the capacity of the cache
+	 */
+	public synchronized int capacity(){
+		return cache.capacity();
+	}
+
+	/**
+	 * Reports the number of items stored in the cache.
+	 * @return the number of items stored in the cache
+	 */
+	public synchronized int size(){
+		return cache.size();
+	}
+
+	/**
+	 * Returns the item that will be evicted if the next access is a miss.
+	 * @return the item to be evicted, or null if no item will be evicted
+	 */
+	public synchronized String nextToReplace(){
+		return cache.nextToReplace();
+	}
+
+	/**
+	 * Determines whether the access to addr is a hit or miss.
+	 * @param addr the address to be accessed
+	 * @return true if the access is a hit, false if it's a miss
+	 */
+	public synchronized boolean access(String addr){
+		return cache.access(addr);
+	}
+
+	/**
+	 * Returns a string representing all items in the cache, as the wrapped cache prints it.
+	 * @return a string representing all items in the cache
+	 */
+	@Override
+	public synchronized String toString(){
+		return cache.toString();
+	}
+}
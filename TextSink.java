@@ -0,0 +1,72 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * An access sink writing the step-by-step simulation log: the result of each access,
+ * the cache content after it and the next item to replace.
+ * Output goes through a large buffer, so it is written in batches rather than per line.
+ */
+public class TextSink implements AccessSink {
+
+	/**
+	 * Size of the output buffer in chars.
+	 */
+	final static private int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Line separator of the platform, as used by System.out.println.
+	 */
+	final static private String NEWLINE = System.lineSeparator();
+
+	/**
+	 * Buffered destination of the log.
+	 */
+	private Writer out;
+
+	/**
+	 * Constructs a sink writing the log to the given destination.
+	 * @param out where to write the log
+	 * @throws IllegalArgumentException if out is null
+	 */
+	public TextSink(Writer out) {
+		if (out == null) {
+			throw new IllegalArgumentException("Output cannot be null.");
+		}
+		this.out = new BufferedWriter(out, BUFFER_SIZE);
+	}
+
+	/**
+	 * Writes the log entry of one access.
+	 * @param index position of the access in the trace, starting at 0
+	 * @param id the address ID of the access in cache.addresses()
+	 * @param hit whether the access was a cache hit
+	 * @param cache the cache after the access
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	public void access(long index, int id, boolean hit, IdCache cache) throws IOException {
+		out.write("Access ");
+		out.write(Long.toString(index));
+		out.write(": ");
+		out.write(cache.addresses().name(id));
+		out.write(hit ? " - Hit" : " - Miss");
+		out.write(NEWLINE);
+		out.write("cache content after access: ");
+		out.write(NEWLINE);
+		out.write(cache.toString());
+		out.write(NEWLINE);
+		out.write(cache.isFull() ? "cache full, " : "cache not full, ");
+		out.write("next to replace: " + cache.nextToReplace());
+		out.write(NEWLINE);
+		out.write("---------------------------------------------");
+		out.write(NEWLINE);
+	}
+
+	/**
+	 * Writes out the buffered log.
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	public void flush() throws IOException {
+		out.flush();
+	}
+}
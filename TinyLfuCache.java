@@ -0,0 +1,447 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Cache implementing W-TinyLFU replacement policy.
+ * New items enter a small LRU window holding 1% of the capacity. The rest is a segmented
+ * LRU main region: items enter its probation segment and move to the protected segment
+ * (80% of the main region) when hit again. When the window overflows, its LRU item only
+ * enters the main region if a frequency sketch estimates it more popular than the
+ * probation LRU item it would displace, so one-hit wonders and scans do not flush the
+ * main region. The sketch counts every access of the trace, resident or not.
+ * All three segments are LRU-to-MRU lists over int arrays of slots, with an index from
+ * address ID to slot, so every access takes constant time.
+ * A registered {@code CacheListener} is told of every access.
+ */
+public class TinyLfuCache implements IdCache {
+
+	/**
+	 * List number of the admission window.
+	 */
+	final static private int WINDOW = 0;
+
+	/**
+	 * List number of the probation segment of the main region.
+	 */
+	final static private int PROBATION = 1;
+
+	/**
+	 * List number of the protected segment of the main region.
+	 */
+	final static private int PROTECTED = 2;
+
+	/**
+	 * Names of the lists, indexed by list number.
+	 */
+	final static private String[] LIST_NAMES = {"W", "P", "S"};
+
+	/**
+	 * The max number of items in the cache.
+	 */
+	private int capacity;
+
+	/**
+	 * The max number of items in the window.
+	 */
+	private int windowCapacity;
+
+	/**
+	 * The max number of items in the protected segment.
+	 */
+	private int protectedCapacity;
+
+	/**
+	 * Estimates of recent access frequency, used to decide admission into the main region.
+	 */
+	private FrequencySketch sketch;
+
+	/**
+	 * Table mapping address IDs to addresses.
+	 */
+	private AddressTable addresses;
+
+	/**
+	 * Whether addresses is this cache's own table, in which evicted addresses are released.
+	 */
+	private boolean ownsTable;
+
+	/**
+	 * Maps each resident address ID to its slot.
+	 */
+	private SlotIndex index;
+
+	/**
+	 * Address ID stored in each slot.
+	 */
+	private int[] keys;
+
+	/**
+	 * List number each slot belongs to.
+	 */
+	private byte[] listOf;
+
+	/**
+	 * Slot closer to the LRU end of the same list, -1 for a list head.
+	 */
+	private int[] prev;
+
+	/**
+	 * Slot closer to the MRU end of the same list, -1 for a list tail.
+	 * Unused slots are chained through this array as a free list.
+	 */
+	private int[] next;
+
+	/**
+	 * LRU slot of each list, -1 if the list is empty.
+	 */
+	private int[] heads = {-1, -1, -1};
+
+	/**
+	 * MRU slot of each list, -1 if the list is empty.
+	 */
+	private int[] tails = {-1, -1, -1};
+
+	/**
+	 * Length of each list.
+	 */
+	private int[] lengths = new int[3];
+
+	/**
+	 * First unused slot, or -1 if all are in use.
+	 */
+	private int freeSlot;
+
+	/**
+	 * Listener told of every access, or null.
+	 */
+	private CacheListener listener;
+
+	/**
+	 * Constructs a W-TinyLFU cache with the specified capacity and its own address table.
+	 * The cache releases the ID of every address it evicts, so the table stays the size of
+	 * the cache however many distinct addresses go through access(String).
+	 * @param cap the capacity of the cache
+	 * @throws IllegalArgumentException if cap is not positive
+	 */
+	public TinyLfuCache(int cap){
+		this(cap, new AddressTable());
+		this.ownsTable = true;
+	}
+
+	/**
+	 * Constructs a W-TinyLFU cache with the specified capacity over a shared address table.
+	 * @param cap the capacity of the cache
+	 * @param addresses the table the IDs passed to access(int) come from
+	 * @throws IllegalArgumentException if cap is not positive or addresses is null
+	 */
+	public TinyLfuCache(int cap, AddressTable addresses){
+		if (cap <= 0) {
+			throw new IllegalArgumentException("Capacity cannot be negative.");
+		}
+		if (addresses == null) {
+			throw new IllegalArgumentException("Address table cannot be null.");
+		}
+		this.capacity = cap;
+		this.windowCapacity = Math.max(1, cap / 100);
+		this.protectedCapacity = (int)((cap - windowCapacity) * 80L / 100);
+		this.sketch = new FrequencySketch(cap);
+		this.addresses = addresses;
+		this.index = new SlotIndex(addresses.size());
+		//one spare slot holds a new item while the window overflows
+		this.keys = new int[cap + 1];
+		this.listOf = new byte[cap + 1];
+		this.prev = new int[cap + 1];
+		this.next = new int[cap + 1];
+		for (int slot = 0; slot <= cap; slot++) {
+			next[slot] = slot < cap ? slot + 1 : -1;
+		}
+	}
+
+	/**
+	 * Checks if the cache is full.
+	 * @return true if the cache is full, false otherwise
+	 */
+	public boolean isFull(){
+		return size() == capacity;
+	}
+
+	/**
+	 * Reports the maximum number of items allowed in the cache.
+	 * @return the capacity of the cache
+	 */
+	public int capacity(){
+		return capacity;
+	}
+
+	/**
+	 * Reports the number of items stored in the cache.
+	 * @return the number of items stored in the cache
+	 */
+	public int size(){
+		return lengths[WINDOW] + lengths[PROBATION] + lengths[PROTECTED];
+	}
+
+	/**
+	 * Reports the table used to map IDs back to addresses.
+	 * @return the address table of this cache
+	 */
+	public AddressTable addresses(){
+		return addresses;
+	}
+
+	/**
+	 * Returns the item that will be evicted if the next access is a miss, assuming the
+	 * miss does not change the frequency estimates of the items compared.
+	 * @return the item to be evicted, or null if no item will be evicted
+	 */
+	public String nextToReplace(){
+		if (!isFull()) {
+			return null;
+		}
+		int candidate = heads[WINDOW];
+		int victim = mainVictim();
+		if (victim >= 0 && frequency(candidate) > frequency(victim)) {
+			return addresses.name(keys[victim]);
+		}
+		return addresses.name(keys[candidate]);
+	}
+
+	/**
+	 * Reports whether an address is in the cache, without counting as an access.
+	 * @param id the ID of the address
+	 * @return true if the address is in the cache, false otherwise
+	 */
+	public boolean contains(int id){
+		return id >= 0 && index.get(id) >= 0;
+	}
+
+	/**
+	 * Registers a listener to be told of every access from now on, replacing any previous one.
+	 * @param listener the listener, or null to remove it
+	 */
+	public void setListener(CacheListener listener){
+		this.listener = listener;
+	}
+
+	/**
+	 * Determines whether the access to addr is a hit or miss.
+	 * Performs necessary updating to maintain the W-TinyLFU cache.
+	 * @param addr the address to be accessed
+	 * @return true if the access is a hit, false if it's a miss
+	 * @throws IllegalArgumentException if addr is null
+	 */
+	public boolean access(String addr){
+		return access(addresses.intern(addr));
+	}
+
+	/**
+	 * Determines whether the access to an address ID is a hit or miss.
+	 * Performs necessary updating to maintain the W-TinyLFU cache.
+	 * @param id the ID of the address to be accessed
+	 * @return true if the access is a hit, false if it's a miss
+	 * @throws IllegalArgumentException if id is not an ID of addresses()
+	 */
+	public boolean access(int id){
+		if (id < 0 || id >= addresses.size()) {
+			throw new IllegalArgumentException("Unknown address ID: " + id);
+		}
+		sketch.increment(addresses.name(id).hashCode());
+		int slot = index.get(id);
+		if (slot >= 0) {
+			if (listOf[slot] == WINDOW) {
+				moveTo(slot, WINDOW);
+			} else {
+				moveTo(slot, PROTECTED);
+				if (lengths[PROTECTED] > protectedCapacity) {
+					moveTo(heads[PROTECTED], PROBATION);
+				}
+			}
+			if (listener != null) {
+				listener.hit(id);
+			}
+			return true;
+		}
+		if (listener != null) {
+			listener.miss(id);
+		}
+		slot = freeSlot;
+		freeSlot = next[slot];
+		keys[slot] = id;
+		index.put(id, slot);
+		linkLast(slot, WINDOW);
+		if (listener != null) {
+			listener.insert(id);
+		}
+		if (lengths[WINDOW] > windowCapacity) {
+			admit(heads[WINDOW]);
+		}
+		return false;
+	}
+
+	/**
+	 * Moves the LRU item of the window into the main region, if it has room or if the item
+	 * is estimated more popular than the main region's victim; evicts the loser otherwise.
+	 * @param candidate the slot leaving the window
+	 */
+	private void admit(int candidate) {
+		if (size() <= capacity) {
+			moveTo(candidate, PROBATION);
+			return;
+		}
+		int victim = mainVictim();
+		if (victim >= 0 && frequency(candidate) > frequency(victim)) {
+			free(victim);
+			moveTo(candidate, PROBATION);
+		} else {
+			free(candidate);
+		}
+	}
+
+	/**
+	 * Estimates how often the address in a slot has been accessed recently.
+	 * @param slot the slot
+	 * @return the estimate of the sketch, from 0 to 15
+	 */
+	private int frequency(int slot) {
+		return sketch.frequency(addresses.name(keys[slot]).hashCode());
+	}
+
+	/**
+	 * Chooses the item of the main region to compare against, or evict.
+	 * @return the LRU slot of probation, or of protected if probation is empty, or -1 if the main region is empty
+	 */
+	private int mainVictim() {
+		return lengths[PROBATION] > 0 ? heads[PROBATION] : heads[PROTECTED];
+	}
+
+	/**
+	 * Moves a slot to the MRU end of a list.
+	 * @param slot the slot to move
+	 * @param list the destination list
+	 */
+	private void moveTo(int slot, int list) {
+		unlink(slot);
+		linkLast(slot, list);
+	}
+
+	/**
+	 * Evicts the address of a slot and returns the slot to the free list.
+	 * @param slot the slot to release
+	 */
+	private void free(int slot) {
+		unlink(slot);
+		index.remove(keys[slot]);
+		if (listener != null) {
+			listener.evict(keys[slot]);
+		}
+		if (ownsTable) {
+			addresses.release(keys[slot]);
+		}
+		next[slot] = freeSlot;
+		freeSlot = slot;
+	}
+
+	/**
+	 * Detaches a slot from its list.
+	 * @param slot the slot to detach
+	 */
+	private void unlink(int slot) {
+		int list = listOf[slot];
+		if (prev[slot] < 0) {
+			heads[list] = next[slot];
+		} else {
+			next[prev[slot]] = next[slot];
+		}
+		if (next[slot] < 0) {
+			tails[list] = prev[slot];
+		} else {
+			prev[next[slot]] = prev[slot];
+		}
+		lengths[list]--;
+	}
+
+	/**
+	 * Appends a slot at the MRU end of a list.
+	 * @param slot the slot to append
+	 * @param list the list to append to
+	 */
+	private void linkLast(int slot, int list) {
+		listOf[slot] = (byte)list;
+		prev[slot] = tails[list];
+		next[slot] = -1;
+		if (tails[list] < 0) {
+			heads[list] = slot;
+		} else {
+			next[tails[list]] = slot;
+		}
+		tails[list] = slot;
+		lengths[list]++;
+	}
+
+	/**
+	 * Writes the frequency sketch, then the address IDs of every list, each from LRU to MRU.
+	 * @param out where to write the state
+	 * @param ids maps each ID to the number written for it
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	public void writeState(DataOutput out, IntUnaryOperator ids) throws IOException {
+		sketch.writeState(out);
+		for (int list = WINDOW; list <= PROTECTED; list++) {
+			out.writeInt(lengths[list]);
+			for (int slot = heads[list]; slot >= 0; slot = next[slot]) {
+				out.writeInt(ids.applyAsInt(keys[slot]));
+			}
+		}
+	}
+
+	/**
+	 * Restores the frequency sketch and the lists written by writeState into this empty cache.
+	 * @param in where to read the state from
+	 * @param ids maps each number written back to an ID
+	 * @throws IOException If an input exception occurred, or the state holds more items than fit
+	 */
+	public void readState(DataInput in, IntUnaryOperator ids) throws IOException {
+		sketch.readState(in);
+		int room = capacity;
+		for (int list = WINDOW; list <= PROTECTED; list++) {
+			int length = in.readInt();
+			if (length < 0 || length > room) {
+				throw new IOException("Cache state does not fit the capacity.");
+			}
+			room -= length;
+			for (int i = 0; i < length; i++) {
+				int slot = freeSlot;
+				freeSlot = next[slot];
+				keys[slot] = ids.applyAsInt(in.readInt());
+				index.put(keys[slot], slot);
+				linkLast(slot, list);
+			}
+		}
+	}
+
+	/**
+	 * Returns a string representing all items in the cache, the window (W), probation (P)
+	 * and protected (S) lists each from LRU to MRU, e.g. W[A] P[B C] S[D].
+	 * @return a string representing all items in the cache
+	 */
+	@Override
+	public String toString(){
+		StringBuilder sb = new StringBuilder();
+		for (int list = WINDOW; list <= PROTECTED; list++) {
+			if (list > WINDOW) {
+				sb.append(" ");
+			}
+			sb.append(LIST_NAMES[list]).append("[");
+			for (int slot = heads[list]; slot >= 0; slot = next[slot]) {
+				if (slot != heads[list]) {
+					sb.append(" ");
+				}
+				sb.append(addresses.name(keys[slot]));
+			}
+			sb.append("]");
+		}
+		return sb.toString();
+	}
+}
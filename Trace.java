@@ -0,0 +1,125 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An immutable sequence of accesses whose addresses are interned into dense integer IDs.
+ * Each distinct address is stored once in the trace's {@code AddressTable},
+ * and the accesses themselves are kept as a flat int array of IDs.
+ * A loaded trace can be replayed by any number of caches, also from several threads
+ * at once, as long as nothing more is interned into its address table.
+ */
+public final class Trace {
+
+	/**
+	 * Largest number of accesses a trace can hold, the largest array length the JVM reliably allocates.
+	 */
+	final static private int MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+	/**
+	 * Table mapping address IDs to addresses.
+	 */
+	private final AddressTable addresses;
+
+	/**
+	 * Address ID of each access, in trace order.
+	 */
+	private final int[] accesses;
+
+	/**
+	 * Position of the next access to the same address after each access, computed on first use.
+	 */
+	private int[] nextUses;
+
+	/**
+	 * Constructs a trace from its accesses.
+	 * @param addresses table the IDs come from
+	 * @param accesses address ID of each access, owned by the trace from now on
+	 */
+	private Trace(AddressTable addresses, int[] accesses) {
+		this.addresses = addresses;
+		this.accesses = accesses;
+	}
+
+	/**
+	 * Wraps accesses already interned into an address table as a trace.
+	 * @param addresses table the IDs come from
+	 * @param accesses address ID of each access, owned by the trace from now on
+	 * @return the trace of the accesses
+	 */
+	static Trace of(AddressTable addresses, int[] accesses) {
+		return new Trace(addresses, accesses);
+	}
+
+	/**
+	 * Reads a trace from a file of whitespace-separated addresses, or a binary trace file.
+	 * @param filename the name (path to) an input file with a sequence of accesses
+	 * @return the trace of the file
+	 * @throws IOException If an input exception occurred with input filename, or the trace
+	 * has more accesses than an array can hold
+	 */
+	public static Trace load(String filename) throws IOException {
+		AddressTable addresses = new AddressTable();
+		int[] accesses;
+		int length = 0;
+		try (TraceReader reader = new TraceReader(filename, addresses)) {
+			//a binary trace states its length, so the array is allocated once
+			accesses = new int[(int)Math.max(1024, Math.min(reader.length(), MAX_LENGTH))];
+			for (int id = reader.next(); id >= 0; id = reader.next()) {
+				if (length == accesses.length) {
+					if (length == MAX_LENGTH) {
+						throw new IOException("Trace has more than " + MAX_LENGTH + " accesses: " + filename);
+					}
+					accesses = Arrays.copyOf(accesses, (int)Math.min(2L * accesses.length, MAX_LENGTH));
+				}
+				accesses[length++] = id;
+			}
+		}
+		return new Trace(addresses, Arrays.copyOf(accesses, length));
+	}
+
+	/**
+	 * Returns the number of accesses in the trace.
+	 * @return the number of accesses
+	 */
+	public int length() {
+		return accesses.length;
+	}
+
+	/**
+	 * Returns the address ID of an access.
+	 * @param i the position of the access in the trace
+	 * @return the address ID of the access
+	 * @throws IndexOutOfBoundsException if i is not a position of the trace
+	 */
+	public int get(int i) {
+		return accesses[i];
+	}
+
+	/**
+	 * Returns, for each access, the position of the next access to the same address.
+	 * The array is computed in one backward pass on the first call and shared afterwards,
+	 * so callers must not modify it.
+	 * @return the next-use position of each access, or length() if its address is not accessed again
+	 */
+	public synchronized int[] nextUses() {
+		if (nextUses == null) {
+			int[] next = new int[accesses.length];
+			int[] last = new int[addresses.size()];
+			Arrays.fill(last, accesses.length);
+			for (int i = accesses.length - 1; i >= 0; i--) {
+				next[i] = last[accesses[i]];
+				last[accesses[i]] = i;
+			}
+			nextUses = next;
+		}
+		return nextUses;
+	}
+
+	/**
+	 * Returns the table mapping the trace's address IDs to addresses.
+	 * @return the address table of the trace
+	 */
+	public AddressTable addresses() {
+		return addresses;
+	}
+}
@@ -0,0 +1,342 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A one-pass characterisation of a trace, to choose a policy and a cache size before simulating:
+ * <ul>
+ * <li>the number of unique addresses;</li>
+ * <li>a Zipf skew estimate, the slope of log frequency against log popularity rank;</li>
+ * <li>the working-set size, the number of distinct addresses in consecutive windows of
+ * 10^2 to 10^6 accesses, as its mean and maximum over the windows;</li>
+ * <li>a histogram of reuse distances, the LRU stack distances of all accesses, in
+ * power-of-two buckets.</li>
+ * </ul>
+ * An exact analysis keeps a few ints per distinct address, so its memory grows with the
+ * trace. A sampled one only keeps those of the addresses a {@code Shards} sampler picks,
+ * so memory is bounded by the sample, and scales counts and distances back by the sampling
+ * rate; the unique addresses are then counted with a {@code HyperLogLog} over the hashes
+ * of all accesses. The Simulator samples a fixed number of addresses unless asked for
+ * an exact analysis.
+ */
+public class TraceAnalysis {
+
+	/**
+	 * Lengths of the working-set windows, in accesses.
+	 */
+	final static private int[] WINDOWS = {100, 1000, 10000, 100000, 1000000};
+
+	/**
+	 * Index bits of the HyperLogLog of a sampled analysis.
+	 */
+	final static private int HLL_BITS = 14;
+
+	/**
+	 * Ratio between two consecutive popularity ranks of the Zipf fit.
+	 */
+	final static private double RANK_STEP = 1.1;
+
+	/**
+	 * Smallest access count of an address used in the Zipf fit, below which counts are mostly noise.
+	 */
+	final static private int MIN_FIT_COUNT = 5;
+
+	/**
+	 * Fraction of addresses analysed.
+	 */
+	private double rate = 1;
+
+	/**
+	 * Number of accesses of the trace.
+	 */
+	private long accesses;
+
+	/**
+	 * Number of accesses analysed, all of them unless sampled.
+	 */
+	private long sampledAccesses;
+
+	/**
+	 * Number of unique addresses, estimated if sampled.
+	 */
+	private long unique;
+
+	/**
+	 * Relative standard error of unique, 0 if exact.
+	 */
+	private double uniqueError;
+
+	/**
+	 * Estimated Zipf skew, NaN if too few addresses to fit.
+	 */
+	private double skew = Double.NaN;
+
+	/**
+	 * Number of popularity ranks the skew was fitted over.
+	 */
+	private int fitRanks;
+
+	/**
+	 * Number of complete windows of each length.
+	 */
+	private long[] windowCounts = new long[WINDOWS.length];
+
+	/**
+	 * Sum of the working-set sizes of the complete windows of each length, as sampled.
+	 */
+	private long[] windowSums = new long[WINDOWS.length];
+
+	/**
+	 * Largest working-set size of the complete windows of each length, as sampled.
+	 */
+	private long[] windowMaxes = new long[WINDOWS.length];
+
+	/**
+	 * Number of analysed accesses in each reuse-distance bucket: bucket b holds distances [2^b, 2^(b+1)).
+	 */
+	private long[] reuse = new long[64];
+
+	/**
+	 * Number of analysed accesses to addresses never accessed before.
+	 */
+	private long cold;
+
+	/**
+	 * Constructs an empty analysis.
+	 */
+	private TraceAnalysis() {
+	}
+
+	/**
+	 * Analyses a trace file in one pass, exactly or from a sample of its addresses.
+	 * @param filename the name (path to) an input file with a sequence of accesses
+	 * @param sampler the sampler picking the addresses to analyse, or null to analyse them all
+	 * @return the analysis of the trace
+	 * @throws IOException If an input exception occurred with input filename
+	 */
+	public static TraceAnalysis analyze(String filename, Shards sampler) throws IOException {
+		TraceAnalysis analysis = new TraceAnalysis();
+		analysis.run(filename, sampler);
+		return analysis;
+	}
+
+	/**
+	 * Streams the trace once through every summary.
+	 * @param filename the name (path to) an input file with a sequence of accesses
+	 * @param sampler the sampler picking the addresses to analyse, or null to analyse them all
+	 * @throws IOException If an input exception occurred with input filename
+	 */
+	private void run(String filename, Shards sampler) throws IOException {
+		AddressTable addresses = new AddressTable();
+		MissRatioCurve stack = new MissRatioCurve(1);
+		HyperLogLog distinct = sampler != null ? new HyperLogLog(HLL_BITS) : null;
+		long limit = sampler != null ? sampler.limit() : -1L;
+		rate = sampler != null ? sampler.rate() : 1;
+		int[] counts = new int[1024];
+		//per window length, the window each address was last counted in, plus one, and the current window
+		int[][] seenIn = new int[WINDOWS.length][1024];
+		long[] window = new long[WINDOWS.length];
+		long[] size = new long[WINDOWS.length];
+		try (TraceReader reader = new TraceReader(filename, addresses)) {
+			while (true) {
+				int id = sampler != null ? reader.nextHashed(limit) : reader.next();
+				if (id == -1) {
+					break;
+				}
+				long time = reader.count() - 1;
+				for (int w = 0; w < WINDOWS.length; w++) {
+					if (time / WINDOWS[w] != window[w]) {
+						//the previous window is complete
+						closeWindow(w, size[w]);
+						window[w] = time / WINDOWS[w];
+						size[w] = 0;
+					}
+				}
+				if (sampler != null) {
+					distinct.add(reader.lastHash());
+					if (id < 0) {
+						continue;
+					}
+				}
+				sampledAccesses++;
+				if (id >= counts.length) {
+					counts = Arrays.copyOf(counts, Math.max(id + 1, counts.length * 2));
+					for (int w = 0; w < WINDOWS.length; w++) {
+						seenIn[w] = Arrays.copyOf(seenIn[w], counts.length);
+					}
+				}
+				counts[id]++;
+				for (int w = 0; w < WINDOWS.length; w++) {
+					if (seenIn[w][id] != window[w] + 1) {
+						seenIn[w][id] = (int)(window[w] + 1);
+						size[w]++;
+					}
+				}
+				long distance = stack.access(id);
+				if (distance == 0) {
+					cold++;
+				} else {
+					long scaled = Math.max(1, Math.round(distance / rate));
+					reuse[63 - Long.numberOfLeadingZeros(scaled)]++;
+				}
+			}
+			accesses = reader.count();
+		}
+		//a trace ending on a window boundary completes its last window too
+		for (int w = 0; w < WINDOWS.length; w++) {
+			if (accesses > 0 && accesses % WINDOWS[w] == 0) {
+				closeWindow(w, size[w]);
+			}
+		}
+		//a sampler that picks every address, as a fixed-size one does on a small trace, interned them all
+		if (rate < 1) {
+			unique = distinct.estimate();
+			uniqueError = distinct.standardError();
+		} else {
+			unique = addresses.size();
+		}
+		fitSkew(Arrays.copyOf(counts, addresses.size()));
+	}
+
+	/**
+	 * Counts a complete window into the working-set statistics of its length.
+	 * @param w index of the window length in WINDOWS
+	 * @param distinct number of distinct addresses analysed in the window
+	 */
+	private void closeWindow(int w, long distinct) {
+		windowCounts[w]++;
+		windowSums[w] += distinct;
+		windowMaxes[w] = Math.max(windowMaxes[w], distinct);
+	}
+
+	/**
+	 * Fits the Zipf skew to the access counts of the addresses: the negated least-squares
+	 * slope of log count against log rank, over ranks spaced geometrically so that the
+	 * many rarely accessed addresses do not outweigh the popular ones.
+	 * @param counts access count of each analysed address, reordered by the fit
+	 */
+	private void fitSkew(int[] counts) {
+		Arrays.sort(counts);
+		int n = counts.length;
+		double sx = 0, sy = 0, sxx = 0, sxy = 0;
+		int points = 0;
+		for (int rank = 1; rank <= n && counts[n - rank] >= MIN_FIT_COUNT; rank = Math.max(rank + 1, (int)(rank * RANK_STEP))) {
+			double x = Math.log(rank);
+			double y = Math.log(counts[n - rank]);
+			sx += x;
+			sy += y;
+			sxx += x * x;
+			sxy += x * y;
+			points++;
+			fitRanks = rank;
+		}
+		if (points >= 3) {
+			skew = -(points * sxy - sx * sy) / (points * sxx - sx * sx);
+		}
+	}
+
+	/**
+	 * Returns the number of accesses of the trace.
+	 * @return the number of accesses
+	 */
+	public long accesses() {
+		return accesses;
+	}
+
+	/**
+	 * Returns the number of unique addresses of the trace.
+	 * @return the exact number, or the HyperLogLog estimate of a sampled analysis
+	 */
+	public long unique() {
+		return unique;
+	}
+
+	/**
+	 * Returns the estimated Zipf skew: about 0 for uniform popularity, 1 for classic Zipf.
+	 * @return the skew, or NaN if too few addresses were accessed often enough to fit it
+	 */
+	public double skew() {
+		return skew;
+	}
+
+	/**
+	 * Returns the mean working-set size over the complete windows of a length.
+	 * @param window the window length, one of 10^2 to 10^6
+	 * @return the mean number of distinct addresses per window, at most window, or NaN if the trace is shorter than one window
+	 * @throws IllegalArgumentException if window is not one of the lengths analysed
+	 */
+	public double workingSet(int window) {
+		int w = Arrays.binarySearch(WINDOWS, window);
+		if (w < 0) {
+			throw new IllegalArgumentException("Unknown window length: " + window);
+		}
+		return windowCounts[w] == 0 ? Double.NaN : Math.min(window, windowSums[w] / rate / windowCounts[w]);
+	}
+
+	/**
+	 * Returns the reuse-distance histogram.
+	 * @return array whose element b is the number of accesses with an LRU stack distance in [2^b, 2^(b+1)),
+	 * scaled to the whole trace if sampled
+	 */
+	public long[] reuseDistances() {
+		long[] histogram = new long[reuse.length];
+		for (int b = 0; b < reuse.length; b++) {
+			histogram[b] = Math.round(reuse[b] / rate);
+		}
+		return histogram;
+	}
+
+	/**
+	 * Returns the number of accesses to addresses never accessed before.
+	 * @return the number of cold accesses, scaled to the whole trace if sampled
+	 */
+	public long coldAccesses() {
+		return Math.round(cold / rate);
+	}
+
+	/**
+	 * Returns a report of every summary: a few lines of text followed by the working-set
+	 * and reuse-distance tables as CSV.
+	 * @return the report
+	 */
+	public String report() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Accesses: ").append(accesses).append('\n');
+		if (rate < 1) {
+			sb.append(String.format("Sampled: %.4f%% of addresses, %d accesses; counts below are scaled back\n",
+					rate * 100, sampledAccesses));
+			sb.append(String.format("Unique addresses: %d (HyperLogLog, +/-%.1f%%)\n", unique, uniqueError * 100));
+		} else {
+			sb.append("Unique addresses: ").append(unique).append('\n');
+		}
+		if (Double.isNaN(skew)) {
+			sb.append("Zipf skew: n/a (too few popular addresses)\n");
+		} else {
+			sb.append(String.format("Zipf skew: %.3f (fitted over the top %d addresses)\n", skew, Math.round(fitRanks / rate)));
+		}
+		sb.append("Working set:\nwindow,windows,mean,max\n");
+		for (int w = 0; w < WINDOWS.length; w++) {
+			if (windowCounts[w] > 0) {
+				sb.append(WINDOWS[w]).append(',').append(windowCounts[w]);
+				sb.append(String.format(",%.1f,%d\n", workingSet(WINDOWS[w]), Math.min(WINDOWS[w], Math.round(windowMaxes[w] / rate))));
+			}
+		}
+		sb.append("Reuse distance:\ndistance,accesses,fraction\n");
+		long[] histogram = reuseDistances();
+		long total = coldAccesses();
+		int last = 0;
+		for (int b = 0; b < histogram.length; b++) {
+			total += histogram[b];
+			if (histogram[b] > 0) {
+				last = b;
+			}
+		}
+		for (int b = 0; b <= last; b++) {
+			long low = 1L << b;
+			sb.append(b == 0 ? "1" : low + "-" + (2 * low - 1)).append(',').append(histogram[b]);
+			sb.append(String.format(",%.6f\n", total == 0 ? 0 : (double)histogram[b] / total));
+		}
+		sb.append("cold,").append(coldAccesses());
+		sb.append(String.format(",%.6f\n", total == 0 ? 0 : (double)coldAccesses() / total));
+		return sb.toString();
+	}
+}
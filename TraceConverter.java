@@ -0,0 +1,121 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A converter of trace files to the compact binary trace format that {@code TraceReader}
+ * reads without tokenizing or creating Strings. A binary trace is laid out as:
+ * <ul>
+ * <li>the magic bytes 0x89 'T' 'R' 'C' and the format version 1;</li>
+ * <li>the string table: the number of distinct addresses, then each address as its
+ * length in bytes and its UTF-8 bytes, in order of first access;</li>
+ * <li>the number of accesses;</li>
+ * <li>the accesses, each the index of its address in the string table.</li>
+ * </ul>
+ * Every number is an unsigned LEB128 varint, so the accesses to the 128 addresses first
+ * accessed take one byte each, those to the next 16,256 two bytes, and so on.
+ */
+public class TraceConverter {
+
+	/**
+	 * Size of the output buffers in bytes.
+	 */
+	final static private int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Number of accesses of the last conversion.
+	 */
+	private long accesses;
+
+	/**
+	 * Number of distinct addresses of the last conversion.
+	 */
+	private int distinct;
+
+	/**
+	 * Converts a trace file, text or binary, to a binary trace file.
+	 * The accesses are streamed to a temporary file next to the output while the string
+	 * table grows, and copied after the header once it is complete, so memory use only
+	 * depends on the number of distinct addresses.
+	 * @param input the name (path to) the trace file to convert
+	 * @param output the name (path to) the binary trace file to write
+	 * @throws IOException If an input or output exception occurred
+	 * @throws IllegalArgumentException if input or output is null
+	 */
+	public void convert(String input, String output) throws IOException {
+		if (input == null || output == null) {
+			throw new IllegalArgumentException("Input and output files are required.");
+		}
+		Path target = Paths.get(output).toAbsolutePath();
+		Path body = Files.createTempFile(target.getParent(), "trace", ".tmp");
+		try {
+			AddressTable addresses = new AddressTable();
+			long count = 0;
+			try (TraceReader reader = new TraceReader(input, addresses);
+					OutputStream out = new BufferedOutputStream(Files.newOutputStream(body), BUFFER_SIZE)) {
+				for (int id = reader.next(); id >= 0; id = reader.next()) {
+					writeVarint(out, id);
+					count++;
+				}
+			}
+			try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target), BUFFER_SIZE)) {
+				out.write(TraceReader.BINARY_MAGIC);
+				writeVarint(out, addresses.size());
+				for (int id = 0; id < addresses.size(); id++) {
+					byte[] name = addresses.name(id).getBytes(StandardCharsets.UTF_8);
+					writeVarint(out, name.length);
+					out.write(name);
+				}
+				writeVarint(out, count);
+			}
+			try (FileChannel from = FileChannel.open(body, StandardOpenOption.READ);
+					FileChannel to = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+				long position = 0;
+				while (position < from.size()) {
+					position += from.transferTo(position, from.size() - position, to);
+				}
+			}
+			accesses = count;
+			distinct = addresses.size();
+		}
+		finally {
+			Files.deleteIfExists(body);
+		}
+	}
+
+	/**
+	 * Returns the number of accesses of the last conversion.
+	 * @return the number of accesses
+	 */
+	public long accesses() {
+		return accesses;
+	}
+
+	/**
+	 * Returns the number of distinct addresses of the last conversion.
+	 * @return the number of distinct addresses
+	 */
+	public int distinct() {
+		return distinct;
+	}
+
+	/**
+	 * Writes an unsigned LEB128 varint, seven bits per byte starting from the lowest.
+	 * @param out where to write
+	 * @param value the non-negative value to write
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	private static void writeVarint(OutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int)(value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int)value);
+	}
+}
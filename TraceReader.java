@@ -0,0 +1,503 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A streaming reader of whitespace-separated addresses from a trace file.
+ * The file is memory-mapped one window at a time and tokenized straight from the
+ * mapped bytes, and each address is interned into an {@code AddressTable} as it is read,
+ * so memory use does not depend on the length of the trace.
+ * <p>
+ * Binary traces written by {@code TraceConverter} are recognized by their first bytes
+ * and read from the same mapped windows: the address IDs are decoded from their varints
+ * without any tokenizing, and each address of the header's string table is interned the
+ * first time one of its accesses is returned.
+ * <p>
+ * Gzip files, text or binary inside, are recognized by their first bytes too, and
+ * decompressed on the fly by a {@code Decompressor} on its own thread; its chunks then
+ * take the place of the mapped windows, so the rest of the reader is the same.
+ */
+public class TraceReader implements Closeable {
+
+	/**
+	 * Number of bytes mapped at a time.
+	 */
+	final static private long WINDOW = 1L << 26;
+
+	/**
+	 * First bytes of a binary trace, which cannot start a text trace.
+	 */
+	final static byte[] BINARY_MAGIC = {(byte)0x89, 'T', 'R', 'C', 1};
+
+	/**
+	 * Channel of the trace file.
+	 */
+	private FileChannel channel;
+
+	/**
+	 * Table the addresses are interned into.
+	 */
+	private AddressTable addresses;
+
+	/**
+	 * Currently mapped window of the file, or current decompressed chunk of a gzip file.
+	 */
+	private ByteBuffer window;
+
+	/**
+	 * Decompressor of a gzip file, or null if the file is mapped directly.
+	 */
+	private Decompressor gzip;
+
+	/**
+	 * File offset where the next window starts.
+	 */
+	private long nextWindow;
+
+	/**
+	 * Offset of the first byte of the current window, in the decompressed bytes for a gzip file.
+	 */
+	private long windowStart;
+
+	/**
+	 * Bytes of the address being read, which may span two windows.
+	 */
+	private byte[] token = new byte[64];
+
+	/**
+	 * Number of accesses read so far.
+	 */
+	private long count;
+
+	/**
+	 * Hash of the address last returned by nextSampled, or last read by nextHashed.
+	 */
+	private long lastHash;
+
+	/**
+	 * Bytes of the addresses of a binary trace's string table, one after the other, or null for a text trace.
+	 */
+	private byte[] names;
+
+	/**
+	 * Start of each address of the string table in names, plus the end of the last one.
+	 */
+	private int[] nameStarts;
+
+	/**
+	 * Hash of each address of the string table.
+	 */
+	private long[] nameHashes;
+
+	/**
+	 * ID in the address table of each address of the string table, or -1 if not interned yet.
+	 */
+	private int[] interned;
+
+	/**
+	 * Number of accesses stated by a binary trace's header, or -1 for a text trace.
+	 */
+	private long length = -1;
+
+	/**
+	 * Opens a trace file for reading.
+	 * @param filename the name (path to) an input file with a sequence of accesses
+	 * @param addresses the table to intern the addresses into
+	 * @throws IOException If an input exception occurred with input filename
+	 */
+	public TraceReader(String filename, AddressTable addresses) throws IOException {
+		if (addresses == null) {
+			throw new IllegalArgumentException("Address table cannot be null.");
+		}
+		this.addresses = addresses;
+		this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		try {
+			ByteBuffer magic = ByteBuffer.allocate(2);
+			channel.read(magic, 0);
+			if (magic.position() == 2 && magic.get(0) == (byte)0x1F && magic.get(1) == (byte)0x8B) {
+				gzip = new Decompressor(filename);
+			}
+			if (mapNextWindow()) {
+				boolean binary = window.remaining() >= BINARY_MAGIC.length;
+				for (int i = 0; binary && i < BINARY_MAGIC.length; i++) {
+					binary = window.get(i) == BINARY_MAGIC[i];
+				}
+				if (binary) {
+					window.position(BINARY_MAGIC.length);
+					readHeader();
+				}
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			//release the channel and any decompressing thread, the caller never gets to close them
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the string table and the number of accesses of a binary trace.
+	 * @throws IOException If an input exception occurred, or the header is malformed
+	 */
+	private void readHeader() throws IOException {
+		long count = readVarint();
+		if (count < 0 || count >= Integer.MAX_VALUE) {
+			throw new IOException("Malformed binary trace header.");
+		}
+		int n = (int)count;
+		names = new byte[(int)Math.max(64, Math.min(8L * n, 1 << 24))];
+		nameStarts = new int[n + 1];
+		nameHashes = new long[n];
+		interned = new int[n];
+		Arrays.fill(interned, -1);
+		for (int i = 0; i < n; i++) {
+			long len = readVarint();
+			if (len <= 0 || len > Integer.MAX_VALUE - 8 - nameStarts[i]) {
+				throw new IOException("Malformed binary trace header.");
+			}
+			int start = nameStarts[i];
+			if (start + len > names.length) {
+				names = Arrays.copyOf(names, (int)Math.min(Integer.MAX_VALUE - 8, Math.max(start + len, 2L * names.length)));
+			}
+			for (int k = 0; k < len; k++) {
+				int b = readByte();
+				if (b < 0) {
+					throw new IOException("Malformed binary trace header.");
+				}
+				names[start + k] = (byte)b;
+			}
+			nameStarts[i + 1] = start + (int)len;
+			nameHashes[i] = hash(names, start, (int)len);
+		}
+		length = readVarint();
+		if (length < 0) {
+			throw new IOException("Malformed binary trace header.");
+		}
+	}
+
+	/**
+	 * Returns the table the addresses are interned into.
+	 * @return the address table of this reader
+	 */
+	public AddressTable addresses() {
+		return addresses;
+	}
+
+	/**
+	 * Returns the number of accesses of the trace, if known before reading it.
+	 * @return the number of accesses stated by a binary trace, or -1 for a text trace
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * Returns the number of accesses read so far.
+	 * @return the number of accesses returned by next() or nextHashed, or read by nextSampled whether sampled or not
+	 */
+	public long count() {
+		return count;
+	}
+
+	/**
+	 * Returns the position of the reader in the file, to seek back to later.
+	 * @return the offset of the next unread byte, in the decompressed bytes for a gzip file
+	 */
+	public long offset() {
+		return windowStart + (window == null ? 0 : window.position());
+	}
+
+	/**
+	 * Moves the reader to a position returned by offset() of another reader of the same file,
+	 * as if the accesses up to it had been read. Mapped files seek directly; gzip files are
+	 * decompressed up to the offset, so it cannot be behind the current one.
+	 * @param offset the position to move to
+	 * @param accesses the number of accesses before that position, the new count()
+	 * @throws IOException If an input exception occurred, or the file ends before offset
+	 * @throws IllegalArgumentException if offset is negative, or behind the current offset of a gzip file
+	 */
+	public void seek(long offset, long accesses) throws IOException {
+		if (offset < 0 || (gzip != null && offset < offset())) {
+			throw new IllegalArgumentException("Cannot seek to offset " + offset + ".");
+		}
+		if (gzip == null) {
+			if (offset > channel.size()) {
+				throw new IOException("Offset " + offset + " is past the end of the file.");
+			}
+			window = null;
+			windowStart = offset;
+			nextWindow = offset;
+		} else {
+			while (window == null || windowStart + window.limit() < offset) {
+				if (!mapNextWindow()) {
+					throw new IOException("Offset " + offset + " is past the end of the file.");
+				}
+			}
+			window.position((int)(offset - windowStart));
+		}
+		count = accesses;
+	}
+
+	/**
+	 * Reads the next access of the trace.
+	 * @return the address ID of the next access, or -1 at the end of the trace
+	 * @throws IOException If an input exception occurred while reading the file
+	 */
+	public int next() throws IOException {
+		if (names != null) {
+			int entry = readEntry();
+			if (entry < 0) {
+				return -1;
+			}
+			count++;
+			return intern(entry);
+		}
+		int len = readToken();
+		if (len == 0) {
+			return -1;
+		}
+		count++;
+		return addresses.intern(token, len);
+	}
+
+	/**
+	 * Reads up to the next access whose address hash, compared as unsigned, is at most a limit.
+	 * This is spatial sampling: an address is either always or never sampled. Skipped
+	 * accesses are counted, but their addresses are not interned, so the table only grows
+	 * with the sampled addresses.
+	 * @param limit the largest hash sampled, -1 to sample every address
+	 * @param intern whether to intern the sampled address
+	 * @return the address ID of the sampled access (0 if not interned), or -1 at the end of the trace
+	 * @throws IOException If an input exception occurred while reading the file
+	 */
+	public int nextSampled(long limit, boolean intern) throws IOException {
+		while (true) {
+			if (names != null) {
+				int entry = readEntry();
+				if (entry < 0) {
+					return -1;
+				}
+				count++;
+				if (Long.compareUnsigned(nameHashes[entry], limit) <= 0) {
+					lastHash = nameHashes[entry];
+					return intern ? intern(entry) : 0;
+				}
+				continue;
+			}
+			int len = readToken();
+			if (len == 0) {
+				return -1;
+			}
+			count++;
+			long h = hash(token, 0, len);
+			if (Long.compareUnsigned(h, limit) <= 0) {
+				lastHash = h;
+				return intern ? addresses.intern(token, len) : 0;
+			}
+		}
+	}
+
+	/**
+	 * Reads the next access of the trace and hashes its address as nextSampled does, but
+	 * returns every access, interning only the addresses whose hash is at most a limit.
+	 * This lets a single pass both sample addresses and see the hash of every access.
+	 * @param limit the largest hash interned, -1 to intern every address
+	 * @return the address ID of the access, -2 if its address is not interned, or -1 at the end of the trace
+	 * @throws IOException If an input exception occurred while reading the file
+	 */
+	public int nextHashed(long limit) throws IOException {
+		if (names != null) {
+			int entry = readEntry();
+			if (entry < 0) {
+				return -1;
+			}
+			count++;
+			lastHash = nameHashes[entry];
+			return Long.compareUnsigned(lastHash, limit) <= 0 ? intern(entry) : -2;
+		}
+		int len = readToken();
+		if (len == 0) {
+			return -1;
+		}
+		count++;
+		lastHash = hash(token, 0, len);
+		return Long.compareUnsigned(lastHash, limit) <= 0 ? addresses.intern(token, len) : -2;
+	}
+
+	/**
+	 * Returns the hash of the address last returned by nextSampled, or last read by nextHashed.
+	 * @return the 64-bit hash of the address
+	 */
+	public long lastHash() {
+		return lastHash;
+	}
+
+	/**
+	 * Reads the bytes of the next address into token.
+	 * @return the number of bytes of the address, or 0 at the end of the trace
+	 * @throws IOException If an input exception occurred while reading the file
+	 */
+	private int readToken() throws IOException {
+		int len = 0;
+		while (true) {
+			if (window == null || !window.hasRemaining()) {
+				if (!mapNextWindow()) {
+					break;
+				}
+			}
+			byte b = window.get();
+			if (isWhitespace(b)) {
+				if (len > 0) {
+					break;
+				}
+			} else {
+				if (len == token.length) {
+					byte[] grown = new byte[token.length * 2];
+					System.arraycopy(token, 0, grown, 0, len);
+					token = grown;
+				}
+				token[len++] = b;
+			}
+		}
+		return len;
+	}
+
+	/**
+	 * Reads the string table entry of the next access of a binary trace.
+	 * @return the index of the address in the string table, or -1 at the end of the trace
+	 * @throws IOException If an input exception occurred, or the entry is not in the string table
+	 */
+	private int readEntry() throws IOException {
+		long entry = readVarint();
+		if (entry >= interned.length) {
+			throw new IOException("Unknown address ID in binary trace: " + entry);
+		}
+		return (int)entry;
+	}
+
+	/**
+	 * Interns an address of the string table, once.
+	 * @param entry the index of the address in the string table
+	 * @return the address ID in the address table
+	 */
+	private int intern(int entry) {
+		int id = interned[entry];
+		if (id < 0) {
+			int start = nameStarts[entry];
+			int len = nameStarts[entry + 1] - start;
+			if (len > token.length) {
+				token = new byte[len];
+			}
+			System.arraycopy(names, start, token, 0, len);
+			id = addresses.intern(token, len);
+			interned[entry] = id;
+		}
+		return id;
+	}
+
+	/**
+	 * Reads an unsigned LEB128 varint, seven bits per byte starting from the lowest.
+	 * @return the value, or -1 at the end of the file
+	 * @throws IOException If an input exception occurred, or the file ends inside the varint
+	 */
+	private long readVarint() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = readByte();
+			if (b < 0) {
+				if (shift == 0) {
+					return -1;
+				}
+				throw new IOException("Truncated binary trace.");
+			}
+			value |= (long)(b & 0x7F) << shift;
+			if (b < 0x80) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint in binary trace.");
+	}
+
+	/**
+	 * Reads the next byte of the file.
+	 * @return the byte as an unsigned value, or -1 at the end of the file
+	 * @throws IOException If an input exception occurred while mapping the file
+	 */
+	private int readByte() throws IOException {
+		if (window == null || !window.hasRemaining()) {
+			if (!mapNextWindow()) {
+				return -1;
+			}
+		}
+		return window.get() & 0xFF;
+	}
+
+	/**
+	 * Hashes the bytes of an address into 64 well-mixed bits (FNV-1a, then a MurmurHash3 finalizer).
+	 * @param bytes buffer holding the address
+	 * @param off start of the address in bytes
+	 * @param len number of bytes of the address
+	 * @return the hash
+	 */
+	private static long hash(byte[] bytes, int off, int len) {
+		long h = 0xCBF29CE484222325L;
+		for (int k = off; k < off + len; k++) {
+			h ^= bytes[k] & 0xFF;
+			h *= 0x100000001B3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		return h ^ (h >>> 33);
+	}
+
+	/**
+	 * Maps the next window of the file, or takes the next decompressed chunk of a gzip file.
+	 * @return false if the whole file has been read already
+	 * @throws IOException If an input exception occurred while mapping or decompressing the file
+	 */
+	private boolean mapNextWindow() throws IOException {
+		if (gzip != null) {
+			if (window != null) {
+				windowStart += window.limit();
+			}
+			window = gzip.next();
+			return window != null;
+		}
+		long remaining = channel.size() - nextWindow;
+		if (remaining <= 0) {
+			return false;
+		}
+		long length = Math.min(remaining, WINDOW);
+		window = channel.map(FileChannel.MapMode.READ_ONLY, nextWindow, length);
+		windowStart = nextWindow;
+		nextWindow += length;
+		return true;
+	}
+
+	/**
+	 * Checks whether a byte separates two addresses.
+	 * @param b the byte to check
+	 * @return true for the ASCII characters Character.isWhitespace accepts
+	 */
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || (b >= 0x09 && b <= 0x0D) || (b >= 0x1C && b <= 0x1F);
+	}
+
+	/**
+	 * Closes the trace file.
+	 * @throws IOException If an input exception occurred while closing the file
+	 */
+	public void close() throws IOException {
+		window = null;
+		if (gzip != null) {
+			gzip.close();
+		}
+		channel.close();
+	}
+}
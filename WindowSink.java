@@ -0,0 +1,221 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * An access sink writing a hit-rate time series as CSV: one row per window of a fixed
+ * number of accesses, with columns end (accesses simulated so far), accesses, hits,
+ * misses, evictions, hit_rate and size, each but end and size over the window only.
+ * Rows are written as each window closes, so memory stays constant however long the
+ * trace is, and every access is passed on to another sink, so the series can be taken
+ * alongside any other output. Evictions are counted from the evict events of the cache,
+ * so the sink must be registered as its listener.
+ * A series resumed from a snapshot carries on with the window open at the snapshot, so its
+ * rows are the same however the run was cut.
+ */
+public class WindowSink implements AccessSink, CacheListener, Closeable {
+
+	/**
+	 * Size of the output buffer in chars.
+	 */
+	final static private int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Buffered destination of the rows.
+	 */
+	private Writer out;
+
+	/**
+	 * Number of accesses per window.
+	 */
+	private long window;
+
+	/**
+	 * Sink every access is passed on to.
+	 */
+	private AccessSink next;
+
+	/**
+	 * Accesses in the current window.
+	 */
+	private long accesses;
+
+	/**
+	 * Hits in the current window.
+	 */
+	private long hits;
+
+	/**
+	 * Evictions in the current window.
+	 */
+	private long evictions;
+
+	/**
+	 * Size of the cache after the last access.
+	 */
+	private int size;
+
+	/**
+	 * Number of accesses simulated after the last access, i.e. its index plus one.
+	 */
+	private long end;
+
+	/**
+	 * Constructs a sink writing a new series to the given destination, starting with the header row.
+	 * Windows end after every multiple of window accesses of the trace.
+	 * @param out where to write the rows
+	 * @param window number of accesses per window
+	 * @param next sink every access is passed on to
+	 * @throws IOException If an output exception occurred while writing the header
+	 * @throws IllegalArgumentException if out or next is null, or window is not positive
+	 */
+	public WindowSink(Writer out, long window, AccessSink next) throws IOException {
+		this(out, window, next, 0, 0, null);
+	}
+
+	/**
+	 * Constructs a sink carrying on the series of a simulation from a snapshot. If the snapshot
+	 * has a series, the rows are appended to it, starting with the window it left open;
+	 * otherwise a new series starts with the header row. Windows end after every multiple of
+	 * window accesses of the trace either way.
+	 * @param out where to write the rows
+	 * @param window number of accesses per window
+	 * @param next sink every access is passed on to
+	 * @param start the snapshot the simulation goes on from
+	 * @throws IOException If an output exception occurred while writing the header
+	 * @throws IllegalArgumentException if out, next or start is null, or window is not positive
+	 */
+	public WindowSink(Writer out, long window, AccessSink next, Checkpoint start) throws IOException {
+		this(out, window, next, nonNull(start).accesses(), start.cache().size(),
+				start.seriesLength() < 0 ? null : start.openWindow());
+	}
+
+	/**
+	 * Checks the snapshot a sink is constructed from before it is used.
+	 * @param start the snapshot
+	 * @return the snapshot
+	 * @throws IllegalArgumentException if start is null
+	 */
+	private static Checkpoint nonNull(Checkpoint start) {
+		if (start == null) {
+			throw new IllegalArgumentException("Snapshot cannot be null.");
+		}
+		return start;
+	}
+
+	/**
+	 * Constructs a sink writing rows to the given destination from a point in the trace.
+	 * @param out where to write the rows
+	 * @param window number of accesses per window
+	 * @param next sink every access is passed on to
+	 * @param end number of accesses simulated before the first one this sink sees
+	 * @param size size of the cache before the first access
+	 * @param open accesses, hits and evictions of the window left open in the series appended
+	 * to, or null to start a new series with the header row
+	 * @throws IOException If an output exception occurred while writing the header
+	 * @throws IllegalArgumentException if out or next is null, or window is not positive
+	 */
+	private WindowSink(Writer out, long window, AccessSink next, long end, int size, long[] open) throws IOException {
+		if (out == null || next == null) {
+			throw new IllegalArgumentException("Output and next sink cannot be null.");
+		}
+		if (window <= 0) {
+			throw new IllegalArgumentException("Window must be positive.");
+		}
+		this.out = new BufferedWriter(out, BUFFER_SIZE);
+		this.window = window;
+		this.next = next;
+		this.end = end;
+		this.size = size;
+		if (open != null) {
+			accesses = open[0];
+			hits = open[1];
+			evictions = open[2];
+		}
+		else {
+			this.out.write("end,accesses,hits,misses,evictions,hit_rate,size\n");
+		}
+	}
+
+	/**
+	 * Returns the counters of the window still open, for a snapshot of the simulation.
+	 * @return a new array of the accesses, hits and evictions of the window so far
+	 */
+	public long[] openWindow() {
+		return new long[] {accesses, hits, evictions};
+	}
+
+	/**
+	 * Counts an eviction of the cache into the current window.
+	 * @param id the address ID of the evicted item
+	 */
+	public void evict(int id) {
+		evictions++;
+	}
+
+	/**
+	 * Counts one access, writing a row if it closes a window, and passes it on.
+	 * @param index position of the access in the trace, starting at 0
+	 * @param id the address ID of the access in cache.addresses()
+	 * @param hit whether the access was a cache hit
+	 * @param cache the cache after the access
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	public void access(long index, int id, boolean hit, IdCache cache) throws IOException {
+		next.access(index, id, hit, cache);
+		accesses++;
+		if (hit) {
+			hits++;
+		}
+		size = cache.size();
+		end = index + 1;
+		if (end % window == 0) {
+			writeRow();
+		}
+	}
+
+	/**
+	 * Writes the row of the current window and starts the next one.
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	private void writeRow() throws IOException {
+		double rate = (double)hits / accesses;
+		out.write(Long.toString(end));
+		out.write(',');
+		out.write(Long.toString(accesses));
+		out.write(',');
+		out.write(Long.toString(hits));
+		out.write(',');
+		out.write(Long.toString(accesses - hits));
+		out.write(',');
+		out.write(Long.toString(evictions));
+		out.write(String.format(",%.6f,", rate));
+		out.write(Integer.toString(size));
+		out.write('\n');
+		accesses = 0;
+		hits = 0;
+		evictions = 0;
+	}
+
+	/**
+	 * Writes out the rows still buffered, and makes the next sink do the same.
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	public void flush() throws IOException {
+		out.flush();
+		next.flush();
+	}
+
+	/**
+	 * Writes the row of the last window if it is not complete, and flushes the rows.
+	 * The destination itself is left open.
+	 * @throws IOException If an output exception occurred while writing
+	 */
+	public void close() throws IOException {
+		if (accesses > 0) {
+			writeRow();
+		}
+		out.flush();
+	}
+}